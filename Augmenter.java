@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Random distortions of training images: a shift, a small rotation and
+ * scale, and an elastic distortion (a random displacement field smoothed
+ * with a Gaussian, as in Simard et al., "Best Practices for Convolutional
+ * Neural Networks Applied to Visual Document Analysis").
+ *
+ * Every output pixel is looked up in the source image through the inverse
+ * transform with bilinear interpolation; pixels that land outside the
+ * source are black. Background zeros stay zero, so augmented images are as
+ * sparse as the originals.
+ *
+ * An Augmenter only holds settings and can be shared between threads; the
+ * per-thread work arrays come from newScratch().
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class Augmenter {
+    private final int rows;
+    private final int cols;
+    private final float maxShift;     // Pixels, in each direction
+    private final float maxRotation;  // Radians, either way
+    private final float maxScale;     // Relative, either way (0.1 = 90% to 110%)
+    private final float elasticAlpha; // Displacement scale, in pixels
+    private final float[] kernel;     // Normalized Gaussian, or null for no elastic distortion
+
+    public Augmenter(int rows, int cols, float maxShift, float maxRotationDegrees, float maxScale,
+                     float elasticAlpha, float elasticSigma) {
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("Image size must be positive!");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.maxShift = maxShift;
+        this.maxRotation = (float) Math.toRadians(maxRotationDegrees);
+        this.maxScale = maxScale;
+        this.elasticAlpha = elasticAlpha;
+        this.kernel = elasticAlpha > 0 && elasticSigma > 0 ? gaussian(elasticSigma) : null;
+    }
+
+    // Settings that suit 28x28 MNIST digits: up to 2 pixels of shift, 12 degrees
+    // of rotation, 10% of scale, and Simard's elastic alpha = 34 with a slightly
+    // smoother sigma = 5, as the other distortions are applied on top.
+    public static Augmenter mnist() {
+        return new Augmenter(28, 28, 2f, 12f, 0.1f, 34f, 5f);
+    }
+
+    public int pixelCount() {
+        return rows * cols;
+    }
+
+    // Work arrays for one thread.
+    float[][] newScratch() {
+        int n = rows * cols;
+        int radius = kernel != null ? kernel.length / 2 : 0;
+        return new float[][] {new float[n], new float[n],
+                              new float[(rows + 2 * radius) * (cols + 2 * radius)], new float[(rows + 2 * radius) * cols]};
+    }
+
+    // Writes a random variant of src into dst[offset .. offset + pixelCount()).
+    void apply(float[] src, float[] dst, int offset, SplittableRandom random, float[][] scratch) {
+        float angle = (float) random.nextDouble(-maxRotation, Math.nextUp(maxRotation));
+        float scale = 1f + (float) random.nextDouble(-maxScale, Math.nextUp(maxScale));
+        float shiftX = (float) random.nextDouble(-maxShift, Math.nextUp(maxShift));
+        float shiftY = (float) random.nextDouble(-maxShift, Math.nextUp(maxShift));
+
+        float[] dx = scratch[0];
+        float[] dy = scratch[1];
+        if (kernel != null) {
+            displacement(dx, scratch, random);
+            displacement(dy, scratch, random);
+        }
+
+        // Inverse of "scale and rotate about the center, then shift"
+        float cos = (float) Math.cos(angle) / scale;
+        float sin = (float) Math.sin(angle) / scale;
+        float cx = (cols - 1) * 0.5f;
+        float cy = (rows - 1) * 0.5f;
+        int index = 0;
+        for (int y = 0; y < rows; y++) {
+            float py = y - cy - shiftY;
+            for (int x = 0; x < cols; x++, index++) {
+                float px = x - cx - shiftX;
+                float sx = cos * px + sin * py + cx;
+                float sy = -sin * px + cos * py + cy;
+                if (kernel != null) {
+                    sx += dx[index];
+                    sy += dy[index];
+                }
+                dst[offset + index] = sample(src, sx, sy);
+            }
+        }
+    }
+
+    // Bilinear lookup, black outside the image.
+    private float sample(float[] src, float x, float y) {
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        if (x0 < -1 || y0 < -1 || x0 >= cols || y0 >= rows) {
+            return 0f;
+        }
+        float fx = x - x0;
+        float fy = y - y0;
+        float top = (1 - fx) * pixel(src, x0, y0) + fx * pixel(src, x0 + 1, y0);
+        float bottom = (1 - fx) * pixel(src, x0, y0 + 1) + fx * pixel(src, x0 + 1, y0 + 1);
+        return (1 - fy) * top + fy * bottom;
+    }
+
+    private float pixel(float[] src, int x, int y) {
+        return x < 0 || y < 0 || x >= cols || y >= rows ? 0f : src[y * cols + x];
+    }
+
+    // Uniform noise in [-1, 1], blurred by the separable Gaussian and scaled by alpha.
+    // The noise covers the image plus a kernel radius on every side, so the blur
+    // needs no edge handling and the field is as smooth at the border as inside.
+    private void displacement(float[] field, float[][] scratch, SplittableRandom random) {
+        int radius = kernel.length / 2;
+        int width = cols + 2 * radius;
+        int height = rows + 2 * radius;
+        float[] noise = scratch[2];
+        float[] temp = scratch[3];
+        for (int i = 0; i < width * height; i++) {
+            noise[i] = (random.nextInt() >> 8) * 0x1.0p-23f; // [-1, 1)
+        }
+        // Rows into temp (height x cols), then columns into field, one kernel tap
+        // at a time over a whole row so the inner loops are plain axpys
+        Arrays.fill(temp, 0f);
+        for (int y = 0; y < height; y++) {
+            for (int k = 0; k < kernel.length; k++) {
+                Kernels.axpy(kernel[k], noise, y * width + k, temp, y * cols, cols);
+            }
+        }
+        Arrays.fill(field, 0f);
+        for (int y = 0; y < rows; y++) {
+            for (int k = 0; k < kernel.length; k++) {
+                Kernels.axpy(kernel[k] * elasticAlpha, temp, (y + k) * cols, field, y * cols, cols);
+            }
+        }
+    }
+
+    // Gaussian weights out to three sigma, summing to 1.
+    private static float[] gaussian(float sigma) {
+        int radius = (int) Math.ceil(3 * sigma);
+        float[] kernel = new float[2 * radius + 1];
+        float sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            kernel[i + radius] = (float) Math.exp(-(i * i) / (2.0 * sigma * sigma));
+            sum += kernel[i + radius];
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background producers for augmented training.
+ *
+ * Each epoch makes `variants` passes over the dataset in a fresh random
+ * order, and every sample in every pass is a new random distortion from
+ * the Augmenter. Producer threads build batches ahead of the trainer into
+ * a small fixed set of buffers, so memory is the same whatever the number
+ * of variants and the distortion work runs while the trainer computes.
+ *
+ * Batches are numbered, and the trainer receives them in number order
+ * through one single-entry slot per buffer. What a batch contains depends
+ * only on the seed and its number, not on which thread built it, so a run
+ * is repeatable with any number of producers.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+class AugmentingPrefetcher implements BatchQueue {
+    private final float[][] inputs;
+    private final float[][] targets;
+    private final Augmenter augmenter;
+    private final int batchSize;
+    private final int classes;
+    private final long seed;
+    private final long batchesPerPass;
+    private final long batchesPerEpoch;
+    private final long totalBatches;
+    private final int buffers;
+    private final BlockingQueue<BatchPrefetcher.Batch> free;
+    private final List<BlockingQueue<BatchPrefetcher.Batch>> slots; // Batch n goes to slot n % buffers
+    private final AtomicLong cursor = new AtomicLong();         // Next batch number to build
+    private final Thread[] producers;
+    private final int[][] orders;                               // Sample order of recent passes
+    private final long[] orderPasses;
+    private volatile RuntimeException error;
+    private long taken;   // Trainer side only
+    private long inEpoch; // Trainer side only
+
+    AugmentingPrefetcher(float[][] inputs, float[][] targets, Augmenter augmenter, int batchSize, int variants,
+                         int epochs, int producers, long seed) {
+        if (inputs.length != targets.length || inputs.length == 0) {
+            throw new IllegalArgumentException("Need the same, non-zero number of inputs and targets!");
+        }
+        if (batchSize < 1 || variants < 1 || producers < 1) {
+            throw new IllegalArgumentException("Batch size, variants and producers must be at least 1!");
+        }
+        this.inputs = inputs;
+        this.targets = targets;
+        this.augmenter = augmenter;
+        this.batchSize = batchSize;
+        this.classes = targets[0].length;
+        this.seed = seed;
+        this.batchesPerPass = (inputs.length + batchSize - 1) / batchSize;
+        this.batchesPerEpoch = batchesPerPass * variants;
+        this.totalBatches = batchesPerEpoch * epochs;
+        // One per producer being built, plus two ready for the trainer
+        this.buffers = producers + 2;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        this.slots = new ArrayList<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new BatchPrefetcher.Batch(batchSize, augmenter.pixelCount(), classes));
+            slots.add(new ArrayBlockingQueue<>(1));
+        }
+        this.orders = new int[buffers][];
+        this.orderPasses = new long[buffers];
+        this.producers = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(this::produce, "augmenter-" + p);
+            thread.setDaemon(true);
+            this.producers[p] = thread;
+        }
+    }
+
+    void start() {
+        for (Thread thread : producers) {
+            thread.start();
+        }
+    }
+
+    void stop() {
+        for (Thread thread : producers) {
+            thread.interrupt();
+        }
+    }
+
+    private void produce() {
+        float[][] scratch = augmenter.newScratch();
+        try {
+            while (true) {
+                // Take a buffer before claiming a number: at most `buffers` numbers are
+                // then in flight, so batch n's slot is free by the time it's built.
+                BatchPrefetcher.Batch batch = free.take();
+                long number = cursor.getAndIncrement();
+                if (number >= totalBatches) {
+                    return;
+                }
+                try {
+                    fill(batch, number, scratch);
+                } catch (RuntimeException e) {
+                    error = e;
+                    slots.get((int) (number % buffers)).put(BatchPrefetcher.END_OF_EPOCH);
+                    return;
+                }
+                slots.get((int) (number % buffers)).put(batch);
+            }
+        } catch (InterruptedException e) {
+            // Trainer stopped early.
+        }
+    }
+
+    // Builds batch `number`: its slice of its pass's order, each sample freshly distorted.
+    private void fill(BatchPrefetcher.Batch batch, long number, float[][] scratch) {
+        long pass = number / batchesPerPass;
+        int start = (int) (number % batchesPerPass) * batchSize;
+        int[] order = order(pass);
+        int pixelCount = augmenter.pixelCount();
+        batch.rows = Math.min(batchSize, inputs.length - start);
+        for (int r = 0; r < batch.rows; r++) {
+            int sample = order[start + r];
+            SplittableRandom random = new SplittableRandom(seed ^ (pass * inputs.length + start + r) * 0x9E3779B97F4A7C15L);
+            augmenter.apply(inputs[sample], batch.inputs, r * pixelCount, random, scratch);
+            System.arraycopy(targets[sample], 0, batch.targets, r * classes, classes);
+        }
+    }
+
+    // Shuffled sample order of a pass, kept for the few passes that can be in flight at once.
+    private synchronized int[] order(long pass) {
+        int slot = (int) (pass % buffers);
+        if (orders[slot] == null || orderPasses[slot] != pass) {
+            int[] order = new int[inputs.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Random random = new Random(seed + pass);
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int temp = order[i];
+                order[i] = order[j];
+                order[j] = temp;
+            }
+            orders[slot] = order;
+            orderPasses[slot] = pass;
+        }
+        return orders[slot];
+    }
+
+    @Override
+    public BatchPrefetcher.Batch take() throws InterruptedException {
+        if (inEpoch == batchesPerEpoch) {
+            inEpoch = 0;
+            return BatchPrefetcher.END_OF_EPOCH;
+        }
+        BatchPrefetcher.Batch batch = slots.get((int) (taken % buffers)).take();
+        if (batch == BatchPrefetcher.END_OF_EPOCH) {
+            throw new IllegalStateException("Augmentation failed", error);
+        }
+        taken++;
+        inEpoch++;
+        return batch;
+    }
+
+    @Override
+    public void recycle(BatchPrefetcher.Batch batch) {
+        free.add(batch);
+    }
+}
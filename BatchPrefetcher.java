@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Background producer for streaming training.
+ *
+ * Reads a SampleSource one chunk at a time, shuffles the samples within
+ * each chunk, and normalizes them into ready-to-train batches while the
+ * trainer works on the previous one. Only one chunk of raw bytes and a
+ * small fixed set of batch buffers exist at any time, so memory is
+ * bounded by the chunk size, not the dataset size.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+class BatchPrefetcher implements Runnable, BatchQueue {
+    static final int BUFFERS = 3; // One being trained on, up to two ready
+
+    // One normalized batch. Arrays are swapped with the trainer's, never copied.
+    static final class Batch {
+        float[] inputs;  // rows x pixelCount
+        float[] targets; // rows x classes, one-hot
+        int rows;
+
+        Batch(int capacity, int pixelCount, int classes) {
+            inputs = new float[capacity * pixelCount];
+            targets = new float[capacity * classes];
+        }
+    }
+
+    // Marks the end of an epoch (or of everything, after an error).
+    static final Batch END_OF_EPOCH = new Batch(0, 0, 0);
+
+    private final SampleSource source;
+    private final int classes;
+    private final int batchSize;
+    private final int chunkSize;
+    private final int epochs;
+    private final Random random;
+    private final BlockingQueue<Batch> ready = new ArrayBlockingQueue<>(BUFFERS + 1);
+    private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BUFFERS);
+    private volatile Exception error; // IOException or RuntimeException from the producer
+
+    // chunkSize is rounded up to a whole number of batches; seed fixes the shuffles.
+    BatchPrefetcher(SampleSource source, int classes, int batchSize, int chunkSize, int epochs, long seed) {
+        this.source = source;
+        this.classes = classes;
+        this.batchSize = batchSize;
+        this.chunkSize = (Math.max(chunkSize, batchSize) + batchSize - 1) / batchSize * batchSize;
+        this.epochs = epochs;
+        this.random = new Random(seed);
+        for (int i = 0; i < BUFFERS; i++) {
+            free.add(new Batch(batchSize, source.pixelCount(), classes));
+        }
+    }
+
+    @Override
+    public void run() {
+        int pixelCount = source.pixelCount();
+        byte[] chunk = new byte[chunkSize * pixelCount];
+        int[] labels = new int[chunkSize];
+        int[] order = new int[chunkSize];
+        try {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                source.reset();
+                int n;
+                do {
+                    // Read the next chunk of raw records.
+                    n = 0;
+                    while (n < chunkSize) {
+                        int label = source.next(chunk, n * pixelCount);
+                        if (label < 0) break;
+                        if (label >= classes) {
+                            throw new IOException("Label " + label + " out of range");
+                        }
+                        labels[n++] = label;
+                    }
+
+                    // Shuffle within the chunk
+                    for (int i = 0; i < n; i++) {
+                        order[i] = i;
+                    }
+                    for (int i = n - 1; i > 0; i--) {
+                        int j = random.nextInt(i + 1);
+                        int temp = order[i];
+                        order[i] = order[j];
+                        order[j] = temp;
+                    }
+
+                    // Normalize into batches
+                    for (int start = 0; start < n; start += batchSize) {
+                        Batch batch = free.take();
+                        batch.rows = Math.min(batchSize, n - start);
+                        for (int r = 0; r < batch.rows; r++) {
+                            int sample = order[start + r];
+                            int src = sample * pixelCount;
+                            int dst = r * pixelCount;
+                            for (int p = 0; p < pixelCount; p++) {
+                                batch.inputs[dst + p] = (chunk[src + p] & 0xff) / 255.0f;
+                            }
+                            for (int c = 0; c < classes; c++) {
+                                batch.targets[r * classes + c] = 0;
+                            }
+                            batch.targets[r * classes + labels[sample]] = 1.0f;
+                        }
+                        ready.put(batch);
+                    }
+                } while (n == chunkSize);
+                ready.put(END_OF_EPOCH);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The trainer rethrows this on its next take. If the queue is full, that take
+            // gets one of the queued batches and still sees the error.
+            error = e;
+            ready.offer(END_OF_EPOCH);
+        } catch (InterruptedException e) {
+            // Trainer stopped early.
+        }
+    }
+
+    @Override
+    public Batch take() throws IOException, InterruptedException {
+        Batch batch = ready.take();
+        Exception e = error;
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e != null) {
+            throw new IllegalStateException("Batch producer failed", e);
+        }
+        return batch;
+    }
+
+    @Override
+    public void recycle(Batch batch) {
+        free.add(batch);
+    }
+}
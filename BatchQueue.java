@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/**
+ * Where streaming training gets its batches: a producer fills them in the
+ * background and the trainer takes them one at a time, handing each back
+ * once it is done with it.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+interface BatchQueue {
+    // Next batch, or BatchPrefetcher.END_OF_EPOCH. Throws if the producer failed.
+    BatchPrefetcher.Batch take() throws IOException, InterruptedException;
+
+    // Hands a used batch back to the producer.
+    void recycle(BatchPrefetcher.Batch batch);
+}
@@ -1,4 +1,18 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Neural Network: Manages multiple layers.
@@ -6,7 +20,8 @@ import java.io.Serializable;
  * @author Bashar Zain
  * @version 1.1
  */
-public class Brain implements Serializable {
+public class Brain implements Classifier, Serializable {
+    private static final long serialVersionUID = 5375448239543727303L;
     
     private Layer[] layers;
     
@@ -17,47 +32,238 @@ public class Brain implements Serializable {
         }
     }
     
+    // Wraps already-built layers (used when loading a model file).
+    Brain(Layer[] layers) {
+        this.layers = layers;
+    }
+    
+    public Layer[] getLayers() {
+        return layers;
+    }
+    
+    // Independent copy of the current weights.
+    Brain snapshot() {
+        Layer[] copies = new Layer[layers.length];
+        for (int l = 0; l < layers.length; l++) {
+            copies[l] = layers[l].copy();
+        }
+        return new Brain(copies);
+    }
+    
+    // Samples per matrix product in batch inference.
+    static final int INFERENCE_BATCH = 64;
+    
+    // Scratch buffers for inference on threads that don't bring their own context.
+    private transient ThreadLocal<InferenceContext> contexts = ThreadLocal.withInitial(this::newContext);
+    private transient ThreadLocal<InferenceContext> batchContexts = ThreadLocal.withInitial(this::newBatchContext);
+    
+    // Notified of batch and epoch progress by every training method.
+    private transient List<TrainingListener> listeners = new CopyOnWriteArrayList<>();
+    
+    public void addTrainingListener(TrainingListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeTrainingListener(TrainingListener listener) {
+        listeners.remove(listener);
+    }
+    
+    // Off when several brains train at once and a listener reports progress instead.
+    private transient volatile boolean printEpochLoss = true;
+    
+    // Turns the "Epoch N average loss" line printed by the training methods on or off.
+    public void setPrintEpochLoss(boolean print) {
+        printEpochLoss = print;
+    }
+    
+    // Creates a workspace for allocation-free calls to pass/forward.
+    public InferenceContext newContext() {
+        return new InferenceContext(layers);
+    }
+    
+    // Creates a workspace for forwardBatch calls of up to INFERENCE_BATCH samples.
+    public InferenceContext newBatchContext() {
+        return new InferenceContext(layers, INFERENCE_BATCH);
+    }
+    
     // Pass forward data through layers.
     // Note: For inference, we return softmax outputs.
-    // Pass forward data through layers.
+    @Override
     public float[] pass(float[] arr) {
-        float[] res = arr;
-        // Process all but the final layer normally
-        for (int i = 0; i < layers.length - 1; i++) {
-            res = layers[i].compute(res);
-        }
-        // For the final layer, use raw outputs (no activation)
-        res = layers[layers.length - 1].computeRaw(res);
-        return softmax(res);
+        return pass(arr, contexts.get()).clone();
+    }
+    
+    // Same as pass, but runs entirely inside ctx and returns its probability buffer,
+    // which is overwritten by the next call that uses the same context.
+    public float[] pass(float[] arr, InferenceContext ctx) {
+        forward(arr, ctx);
+        return softmax(ctx.logits(), ctx.probabilities);
     }
 
     
     // Forward pass without applying softmax (for training use)
+    @Override
     public float[] forward(float[] arr) {
-        float[] res = arr;
-        for (int i = 0; i < layers.length - 1; i++) {
-            res = layers[i].compute(res);
+        return forward(arr, contexts.get()).clone(); // raw outputs for training
+    }
+    
+    // Same as forward, but runs entirely inside ctx and returns its logits buffer.
+    // Reads the weights only, so concurrent calls with separate contexts are safe.
+    // ctx must come from newContext(); a batch context's buffers hold many rows.
+    public float[] forward(float[] arr, InferenceContext ctx) {
+        if (!ctx.fits(layers)) {
+            throw new IllegalArgumentException("Context does not match this network!");
+        }
+        if (ctx.capacity != 1) {
+            throw new IllegalArgumentException("Context is for batches; use newContext()!");
+        }
+        if (arr.length != layers[0].inputCount()) {
+            throw new IllegalArgumentException("Input size must match weight size!");
+        }
+        int L = layers.length;
+        // The first layer skips zero pixels when the image is sparse enough.
+        layers[0].forwardBatchSparse(arr, ctx.sparse, ctx.activations[0], 1, L > 1);
+        // Process the rest with ReLU, except the final layer, which gives raw outputs
+        for (int i = 1; i < L; i++) {
+            layers[i].forward(ctx.activations[i - 1], ctx.activations[i], i < L - 1);
         }
-        res = layers[layers.length - 1].computeRaw(res);
-        return res; // raw outputs for training
+        return ctx.logits();
     }
 
     
-    // Standard softmax function.
-    float[] softmax(float[] arr) {
-        float sumExp = 0;
-        float[] expValues = new float[arr.length];
-        for (int i = 0; i < arr.length; i++) {
-            expValues[i] = (float) Math.exp(arr[i]);
-            sumExp += expValues[i];
+    // Softmax outputs for every input, evaluated as batched matrix products.
+    public float[][] passBatch(float[][] inputs) {
+        float[][] probabilities = new float[inputs.length][layers[layers.length - 1].neuronCount()];
+        passBatch(inputs, null, probabilities, false);
+        return probabilities;
+    }
+    
+    // Raw outputs for every input, evaluated as batched matrix products.
+    public float[][] forwardBatch(float[][] inputs) {
+        float[][] logits = new float[inputs.length][layers[layers.length - 1].neuronCount()];
+        passBatch(inputs, logits, null, false);
+        return logits;
+    }
+    
+    // Writes logits and/or probabilities (either may be null) for every input into the
+    // caller's rows. Inputs are processed INFERENCE_BATCH at a time; with parallel set,
+    // the chunks are spread over the common fork-join pool.
+    public void passBatch(float[][] inputs, float[][] logits, float[][] probabilities, boolean parallel) {
+        int chunks = (inputs.length + INFERENCE_BATCH - 1) / INFERENCE_BATCH;
+        IntStream range = IntStream.range(0, chunks);
+        if (parallel) {
+            range = range.parallel();
+        }
+        range.forEach(c -> {
+            int start = c * INFERENCE_BATCH;
+            int rows = Math.min(INFERENCE_BATCH, inputs.length - start);
+            InferenceContext ctx = batchContexts.get();
+            forwardBatch(inputs, start, rows, ctx);
+            int classes = layers[layers.length - 1].neuronCount();
+            float[] out = ctx.activations[layers.length - 1];
+            for (int r = 0; r < rows; r++) {
+                if (logits != null) {
+                    System.arraycopy(out, r * classes, logits[start + r], 0, classes);
+                }
+                if (probabilities != null) {
+                    Kernels.softmax(out, r * classes, probabilities[start + r], 0, classes);
+                }
+            }
+        });
+    }
+    
+    // Forward pass for inputs[start .. start + rows) inside a batch context.
+    // Leaves the logits as a rows x classes matrix in the context's last activation buffer.
+    void forwardBatch(float[][] inputs, int start, int rows, InferenceContext ctx) {
+        if (!ctx.fits(layers) || rows > ctx.capacity) {
+            throw new IllegalArgumentException("Context does not match this batch!");
+        }
+        int inputSize = layers[0].inputCount();
+        for (int r = 0; r < rows; r++) {
+            if (inputs[start + r].length != inputSize) {
+                throw new IllegalArgumentException("Input size must match weight size!");
+            }
+        }
+        float[] batch = inputs[start];
+        if (ctx.inputs != null) {
+            batch = ctx.inputs;
+            for (int r = 0; r < rows; r++) {
+                System.arraycopy(inputs[start + r], 0, batch, r * inputSize, inputSize);
+            }
         }
-        for (int i = 0; i < arr.length; i++) {
-            expValues[i] /= sumExp;
+        int L = layers.length;
+        layers[0].forwardBatchSparse(batch, ctx.sparse, ctx.activations[0], rows, L > 1);
+        for (int i = 1; i < L; i++) {
+            layers[i].forwardBatch(ctx.activations[i - 1], ctx.activations[i], rows, i < L - 1);
         }
-        return expValues;
+    }
+
+    
+    // Standard softmax function.
+    static float[] softmax(float[] arr) {
+        return softmax(arr, new float[arr.length]);
     }
     
+    // Softmax of arr written into out (may be the same array); returns out.
+    static float[] softmax(float[] arr, float[] out) {
+        Kernels.softmax(arr, 0, out, 0, arr.length);
+        return out;
+    }
+    
+    // Per-sample SGD (a mini-batch of one).
     void train(float[][] trainingInputs, float[][] trainingTargets, float learningRate, int epochs) {
+        train(trainingInputs, trainingTargets, learningRate, epochs, 1);
+    }
+    
+    // Mini-batch SGD on the calling thread.
+    void train(float[][] trainingInputs, float[][] trainingTargets, float learningRate, int epochs, int batchSize) {
+        train(trainingInputs, trainingTargets, learningRate, epochs, batchSize, 1);
+    }
+    
+    // Mini-batch SGD: forward and backward run for a whole batch as blocked
+    // matrix products, and weights update once per batch with the averaged gradient.
+    // With parallelism > 1 each batch is sharded across a ForkJoinPool; every worker
+    // accumulates into its own buffers and a tree reduction sums them before the update.
+    void train(float[][] trainingInputs, float[][] trainingTargets, float learningRate, int epochs,
+               int batchSize, int parallelism) {
+        train(trainingInputs, trainingTargets, learningRate, epochs, batchSize, parallelism, null, null);
+    }
+    
+    // Same, checkpointing in the background every few epochs. If the checkpointer's file
+    // already exists, its weights and sample order are restored first and training
+    // continues with the epoch after the one it recorded. A null checkpointer means
+    // no checkpointing.
+    void train(float[][] trainingInputs, float[][] trainingTargets, float learningRate, int epochs,
+               int batchSize, int parallelism, Checkpointer checkpointer) throws IOException {
+        Checkpoint resume = checkpointer != null ? checkpointer.latest() : null;
+        if (resume != null) {
+            if (resume.order.length != trainingInputs.length) {
+                throw new IllegalArgumentException("Checkpoint was made with a different number of samples!");
+            }
+            Layer[] saved = resume.brain.getLayers();
+            if (saved.length != layers.length) {
+                throw new IllegalArgumentException("Checkpoint does not match this network!");
+            }
+            for (int l = 0; l < layers.length; l++) {
+                layers[l].copyFrom(saved[l]);
+            }
+            if (resume.learningRate != learningRate || resume.batchSize != batchSize) {
+                System.out.println("Note: checkpoint used learning rate " + resume.learningRate
+                                   + " and batch size " + resume.batchSize);
+            }
+            System.out.println("Resuming from " + checkpointer.file() + " after epoch " + resume.epoch);
+        }
+        train(trainingInputs, trainingTargets, learningRate, epochs, batchSize, parallelism, checkpointer, resume);
+    }
+    
+    private void train(float[][] trainingInputs, float[][] trainingTargets, float learningRate, int epochs,
+                       int batchSize, int parallelism, Checkpointer checkpointer, Checkpoint resume) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1!");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1!");
+        }
         // Use a clip threshold (you can adjust this as needed)
         float clipThreshold = 0.1f;
         int sampleCount = trainingInputs.length;
@@ -65,102 +271,249 @@ public class Brain implements Serializable {
         for (int i = 0; i < sampleCount; i++) {
             indices[i] = i;
         }
+        long seed = System.nanoTime();
+        int firstEpoch = 1;
+        if (resume != null) {
+            indices = resume.order.clone();
+            seed = resume.seed;
+            firstEpoch = resume.epoch + 1;
+        }
         
-        for (int epoch = 1; epoch <= epochs; epoch++) {
-            // Shuffle indices each epoch
-            for (int i = sampleCount - 1; i > 0; i--) {
-                int j = (int)(Math.random() * (i + 1));
-                int temp = indices[i];
-                indices[i] = indices[j];
-                indices[j] = temp;
-            }
-            
-            double epochLoss = 0.0;
-            
-            // Process training samples in shuffled order
-            for (int idx = 0; idx < sampleCount; idx++) {
-                int sampleIdx = indices[idx];
-                float[] input = trainingInputs[sampleIdx];
-                float[] target = trainingTargets[sampleIdx];
-                
-                // --- Forward Pass ---
-                float[][] layerInputs = new float[layers.length][];
-                float[] activations = input; // initial input
-                
-                // Process hidden layers with activation.
-                for (int i = 0; i < layers.length - 1; i++) {
-                    layerInputs[i] = activations;
-                    activations = layers[i].compute(activations);
+        // Buffers are allocated once per worker and reused for every batch.
+        int workerRows = (Math.min(batchSize, Math.max(sampleCount, 1)) + parallelism - 1) / parallelism;
+        TrainingBuffers[] workers = new TrainingBuffers[parallelism];
+        for (int w = 0; w < parallelism; w++) {
+            workers[w] = new TrainingBuffers(layers, workerRows);
+        }
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        TrainingProgress progress = new TrainingProgress(listeners);
+        
+        try {
+            for (int epoch = firstEpoch; epoch <= epochs; epoch++) {
+                progress.startEpoch(epoch);
+                // Shuffle indices each epoch (seeded per epoch, so a resumed run shuffles the same way)
+                Random random = new Random(seed + epoch);
+                for (int i = sampleCount - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int temp = indices[i];
+                    indices[i] = indices[j];
+                    indices[j] = temp;
                 }
-                // For the final layer, store its input and compute raw outputs.
-                layerInputs[layers.length - 1] = activations;
-                activations = layers[layers.length - 1].computeRaw(activations);
                 
-                float[] finalOutput = activations;
-                float[] softmaxOutput = softmax(finalOutput);
+                double epochLoss = 0.0;
                 
-                // --- Loss Computation (Cross-Entropy) ---
-                double sampleLoss = 0.0;
-                for (int i = 0; i < softmaxOutput.length; i++) {
-                    sampleLoss -= target[i] * Math.log(softmaxOutput[i] + 1e-8);
+                // Process training samples in shuffled order, one batch at a time
+                for (int start = 0; start < sampleCount; start += batchSize) {
+                    int rows = Math.min(batchSize, sampleCount - start);
+                    int shards = Math.min(parallelism, rows);
+                    long batchStart = System.nanoTime();
+                    double batchLoss;
+                    if (pool == null) {
+                        batchLoss = workers[0].computeGradients(layers, trainingInputs, trainingTargets, indices, start, rows);
+                    } else {
+                        batchLoss = pool.invoke(new GradientTask(layers, trainingInputs, trainingTargets, indices,
+                                                                 start, rows, workers, shards));
+                    }
+                    long computed = System.nanoTime();
+                    workers[0].applyGradients(layers, rows, learningRate, clipThreshold);
+                    progress.batch(workers, shards, rows, batchLoss, 0, computed - batchStart, System.nanoTime() - computed);
+                    epochLoss += batchLoss;
                 }
-                epochLoss += sampleLoss;
-                
-                // --- Backward Pass ---
-                float[][] deltas = new float[layers.length][];
-                int L = layers.length;
-                
-                // Output layer delta: for cross-entropy with softmax, delta = softmax - target.
-                Neuron[] outputNeurons = layers[L - 1].getNeurons();
-                deltas[L - 1] = new float[outputNeurons.length];
-                for (int i = 0; i < outputNeurons.length; i++) {
-                    deltas[L - 1][i] = softmaxOutput[i] - target[i];
+                progress.endEpoch();
+                printEpochLoss(epoch, epochLoss, sampleCount);
+                if (checkpointer != null && checkpointer.due(epoch, epochs)) {
+                    // Copy now, between batches, so the writer sees one consistent set of weights.
+                    checkpointer.submit(new Checkpoint(snapshot(), epoch, seed, learningRate, batchSize,
+                                                       clipThreshold, indices.clone()));
                 }
-                
-                // Hidden layers: propagate error backward.
-                for (int layerIdx = L - 2; layerIdx >= 0; layerIdx--) {
-                    Neuron[] currentNeurons = layers[layerIdx].getNeurons();
-                    deltas[layerIdx] = new float[currentNeurons.length];
-                    Neuron[] nextNeurons = layers[layerIdx + 1].getNeurons();
-                    for (int i = 0; i < currentNeurons.length; i++) {
-                        float errorSum = 0;
-                        for (int j = 0; j < nextNeurons.length; j++) {
-                            float weight_ij = nextNeurons[j].getWeights()[i];
-                            errorSum += deltas[layerIdx + 1][j] * weight_ij;
-                        }
-                        deltas[layerIdx][i] = currentNeurons[i].ReLUPrime() * errorSum;
-                    }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+    
+    // Out-of-core mini-batch SGD over a sample source. A background thread reads the
+    // source chunkSize records at a time, shuffles within the chunk and normalizes the
+    // next batches while the current one trains, so memory depends on the chunk size
+    // rather than the dataset size.
+    public void trainStreaming(SampleSource source, float learningRate, int epochs, int batchSize, int chunkSize)
+            throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1!");
+        }
+        if (source.pixelCount() != layers[0].inputCount()) {
+            throw new IllegalArgumentException("Input size must match weight size!");
+        }
+        BatchPrefetcher prefetcher = new BatchPrefetcher(source, layers[layers.length - 1].neuronCount(),
+                                                         batchSize, chunkSize, epochs, System.nanoTime());
+        Thread producer = new Thread(prefetcher, "batch-prefetcher");
+        producer.setDaemon(true);
+        producer.start();
+        try {
+            trainBatches(prefetcher, learningRate, epochs, batchSize);
+        } finally {
+            producer.interrupt();
+        }
+    }
+    
+    // Mini-batch SGD on randomly distorted copies of the training set. Each epoch makes
+    // `variants` passes in a fresh order, every sample a new distortion from augmenter.
+    // Producer threads build the batches ahead of the trainer into a fixed set of
+    // buffers, so memory doesn't grow with the number of variants and the distortion
+    // work overlaps with training.
+    public void trainAugmented(float[][] trainingInputs, float[][] trainingTargets, Augmenter augmenter,
+                               float learningRate, int epochs, int batchSize, int variants, int producers) {
+        if (augmenter.pixelCount() != layers[0].inputCount()) {
+            throw new IllegalArgumentException("Input size must match weight size!");
+        }
+        AugmentingPrefetcher prefetcher = new AugmentingPrefetcher(trainingInputs, trainingTargets, augmenter,
+                                                                   batchSize, variants, epochs, producers,
+                                                                   System.nanoTime());
+        prefetcher.start();
+        try {
+            trainBatches(prefetcher, learningRate, epochs, batchSize);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory producers don't do I/O
+        } finally {
+            prefetcher.stop();
+        }
+    }
+    
+    // Trains on the batches a background producer delivers, epoch by epoch.
+    private void trainBatches(BatchQueue queue, float learningRate, int epochs, int batchSize) throws IOException {
+        // Use a clip threshold (you can adjust this as needed)
+        float clipThreshold = 0.1f;
+        TrainingBuffers buffers = new TrainingBuffers(layers, batchSize);
+        TrainingBuffers[] workers = {buffers};
+        TrainingProgress progress = new TrainingProgress(listeners);
+        try {
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                progress.startEpoch(epoch);
+                double epochLoss = 0.0;
+                int sampleCount = 0;
+                BatchPrefetcher.Batch batch;
+                long waitStart = System.nanoTime();
+                while ((batch = queue.take()) != BatchPrefetcher.END_OF_EPOCH) {
+                    long batchStart = System.nanoTime();
+                    buffers.swapBatch(batch);
+                    double batchLoss = buffers.computeGradients(layers, batch.rows);
+                    long computed = System.nanoTime();
+                    buffers.applyGradients(layers, batch.rows, learningRate, clipThreshold);
+                    long updated = System.nanoTime();
+                    progress.batch(workers, 1, batch.rows, batchLoss, batchStart - waitStart,
+                                   computed - batchStart, updated - computed);
+                    epochLoss += batchLoss;
+                    sampleCount += batch.rows;
+                    queue.recycle(batch);
+                    waitStart = System.nanoTime();
+                }
+                progress.endEpoch();
+                printEpochLoss(epoch, epochLoss, sampleCount);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training interrupted", e);
+        }
+    }
+    
+    // Asynchronous lock-free SGD (Hogwild): each thread pulls samples from a shared
+    // shuffled order and applies its per-sample update directly to the shared weights
+    // without locking. Updates from the first layer are sparse because most pixels are
+    // zero, so collisions between threads are rare and no reduction step is needed.
+    void trainHogwild(float[][] trainingInputs, float[][] trainingTargets, float learningRate, int epochs, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1!");
+        }
+        // Use a clip threshold (you can adjust this as needed)
+        float clipThreshold = 0.1f;
+        int sampleCount = trainingInputs.length;
+        int[] indices = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            indices[i] = i;
+        }
+        int chunk = 64; // Samples claimed per cursor bump
+        long seed = System.nanoTime();
+        
+        TrainingBuffers[] workerBuffers = new TrainingBuffers[threads];
+        for (int t = 0; t < threads; t++) {
+            workerBuffers[t] = new TrainingBuffers(layers, 1);
+        }
+        TrainingProgress progress = new TrainingProgress(listeners);
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                progress.startEpoch(epoch);
+                // Shuffle indices each epoch (seeded per epoch, as in train)
+                Random random = new Random(seed + epoch);
+                for (int i = sampleCount - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int temp = indices[i];
+                    indices[i] = indices[j];
+                    indices[j] = temp;
                 }
                 
-                // --- Weight and Bias Updates (with gradient clipping) ---
-                for (int layerIdx = 0; layerIdx < L; layerIdx++) {
-                    Neuron[] neurons = layers[layerIdx].getNeurons();
-                    float[] layerInput = layerInputs[layerIdx];
-                    for (int i = 0; i < neurons.length; i++) {
-                        float[] neuronWeights = neurons[i].getWeights();
-                        for (int w = 0; w < neuronWeights.length; w++) {
-                            float grad = learningRate * deltas[layerIdx][i] * layerInput[w];
-                            if (grad > clipThreshold) {
-                                grad = clipThreshold;
-                            } else if (grad < -clipThreshold) {
-                                grad = -clipThreshold;
+                AtomicInteger cursor = new AtomicInteger();
+                List<Callable<Double>> workers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    TrainingBuffers buffers = workerBuffers[t];
+                    workers.add(() -> {
+                        double loss = 0.0;
+                        int start;
+                        while ((start = cursor.getAndAdd(chunk)) < sampleCount) {
+                            int end = Math.min(start + chunk, sampleCount);
+                            for (int idx = start; idx < end; idx++) {
+                                loss += buffers.computeDeltas(layers, trainingInputs, trainingTargets, indices, idx, 1);
+                                long updateStart = System.nanoTime();
+                                for (int l = 0; l < layers.length; l++) {
+                                    layers[l].applySampleUpdate(buffers.activations[l], buffers.deltas[l],
+                                                                learningRate, clipThreshold);
+                                }
+                                buffers.updateNanos += System.nanoTime() - updateStart;
                             }
-                            neuronWeights[w] -= grad;
-                        }
-                        float biasGrad = learningRate * deltas[layerIdx][i];
-                        if (biasGrad > clipThreshold) {
-                            biasGrad = clipThreshold;
-                        } else if (biasGrad < -clipThreshold) {
-                            biasGrad = -clipThreshold;
                         }
-                        float newBias = neurons[i].getBias() - biasGrad;
-                        neurons[i].setBias(newBias);
-                    }
+                        return loss;
+                    });
                 }
+                
+                double epochLoss = 0.0;
+                for (Future<Double> result : pool.invokeAll(workers)) {
+                    epochLoss += result.get();
+                }
+                progress.samples(workerBuffers, threads, sampleCount, epochLoss);
+                progress.endEpoch();
+                printEpochLoss(epoch, epochLoss, sampleCount);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training worker failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private void printEpochLoss(int epoch, double epochLoss, int sampleCount) {
+        if (!printEpochLoss) {
+            return;
+        }
+        if (sampleCount == 0) {
+            System.out.println("Epoch " + epoch + ": no samples");
+        } else {
             System.out.println("Epoch " + epoch + " average loss: " + (epochLoss / sampleCount));
         }
     }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        contexts = ThreadLocal.withInitial(this::newContext);
+        batchContexts = ThreadLocal.withInitial(this::newBatchContext);
+        listeners = new CopyOnWriteArrayList<>();
+        printEpochLoss = true;
+    }
 
 
 }
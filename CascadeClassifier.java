@@ -0,0 +1,283 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-stage classifier: a small, fast network answers when it is sure,
+ * and the full network only sees the inputs it is unsure about.
+ *
+ * The small model's prediction is returned as is when its confidence (top
+ * softmax probability) is at least the threshold; otherwise the input
+ * goes to the large model. Most digits are easy, so most inputs exit
+ * early and the average cost per image approaches the small model's.
+ *
+ * calibrate picks the lowest threshold (the most early exits) whose
+ * accuracy on a labelled set stays within a given loss of the large
+ * model's alone.
+ *
+ * Usage: java CascadeClassifier [--small small_brain.bin] [--big trained_brain.bin]
+ *                               [--max-loss 0.001] [--small-epochs 5]
+ * Trains and saves the 784-32-10 small model first if its file is missing.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class CascadeClassifier implements Classifier {
+    static final String SMALL_FILE = "small_brain.bin";
+    static final int[] SMALL_ARCHITECTURE = {784, 32, 10};
+
+    private final Classifier small;
+    private final Classifier big;
+    private final float threshold;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder earlyExits = new LongAdder();
+
+    public CascadeClassifier(Classifier small, Classifier big, float threshold) {
+        this.small = small;
+        this.big = big;
+        this.threshold = threshold;
+    }
+
+    // How a threshold would have done on a labelled set.
+    public static final class Calibration {
+        final float threshold;
+        final double exitFraction; // Inputs answered by the small model
+        final double accuracy;     // Of the cascade
+        final double bigAccuracy;  // Of the large model alone
+
+        Calibration(float threshold, double exitFraction, double accuracy, double bigAccuracy) {
+            this.threshold = threshold;
+            this.exitFraction = exitFraction;
+            this.accuracy = accuracy;
+            this.bigAccuracy = bigAccuracy;
+        }
+
+        public float threshold() {
+            return threshold;
+        }
+
+        public double exitFraction() {
+            return exitFraction;
+        }
+
+        public double accuracy() {
+            return accuracy;
+        }
+
+        public double accuracyLoss() {
+            return bigAccuracy - accuracy;
+        }
+    }
+
+    @Override
+    public float[] pass(float[] input) {
+        return Brain.softmax(forward(input));
+    }
+
+    @Override
+    public float[] forward(float[] input) {
+        return predict(input).logits();
+    }
+
+    @Override
+    public Prediction predict(float[] input) {
+        requests.increment();
+        Prediction first = small.predict(input);
+        if (first.confidence() >= threshold) {
+            earlyExits.increment();
+            return first;
+        }
+        return big.predict(input);
+    }
+
+    public float threshold() {
+        return threshold;
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    // Fraction of the inputs so far that the small model answered.
+    public double earlyExitFraction() {
+        long n = requests.sum();
+        return n > 0 ? (double) earlyExits.sum() / n : 0;
+    }
+
+    // Scores both models once on a labelled set and returns the lowest threshold whose
+    // cascade accuracy is at most maxAccuracyLoss below the large model's.
+    public static Calibration calibrate(Classifier small, Classifier big, float[][] inputs, int[] labels,
+                                        double maxAccuracyLoss) {
+        Outcomes outcomes = new Outcomes(small, big, inputs, labels);
+        return outcomes.best(maxAccuracyLoss);
+    }
+
+    // Small-model confidences and who got what right, sorted by confidence, most confident first.
+    static final class Outcomes {
+        final int n;
+        final float[] confidence;
+        final int[] smallCorrectBefore; // Small-model correct answers among the first k
+        final int[] bigCorrectFrom;     // Large-model correct answers among those from k on
+        final int bigCorrect;
+
+        Outcomes(Classifier small, Classifier big, float[][] inputs, int[] labels) {
+            n = inputs.length;
+            Prediction[] smallPredictions = new Prediction[n];
+            Prediction[] bigPredictions = new Prediction[n];
+            Evaluation.evaluate(small, inputs, labels, smallPredictions);
+            Evaluation.evaluate(big, inputs, labels, bigPredictions);
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Float.compare(smallPredictions[b].confidence(),
+                                                       smallPredictions[a].confidence()));
+            confidence = new float[n];
+            smallCorrectBefore = new int[n + 1];
+            bigCorrectFrom = new int[n + 1];
+            for (int k = 0; k < n; k++) {
+                int i = order[k];
+                confidence[k] = smallPredictions[i].confidence();
+                smallCorrectBefore[k + 1] = smallCorrectBefore[k] + (smallPredictions[i].label() == labels[i] ? 1 : 0);
+            }
+            for (int k = n - 1; k >= 0; k--) {
+                int i = order[k];
+                bigCorrectFrom[k] = bigCorrectFrom[k + 1] + (bigPredictions[i].label() == labels[i] ? 1 : 0);
+            }
+            bigCorrect = bigCorrectFrom[0];
+        }
+
+        // The cascade that exits the first k inputs early.
+        Calibration exits(int k) {
+            float threshold = k == 0 ? Float.POSITIVE_INFINITY : confidence[k - 1];
+            return new Calibration(threshold, (double) k / n, (double) (smallCorrectBefore[k] + bigCorrectFrom[k]) / n,
+                                   (double) bigCorrect / n);
+        }
+
+        // The cascade at a given threshold.
+        Calibration at(float threshold) {
+            int k = 0;
+            while (k < n && confidence[k] >= threshold) {
+                k++;
+            }
+            Calibration c = exits(k);
+            return new Calibration(threshold, c.exitFraction, c.accuracy, c.bigAccuracy);
+        }
+
+        // Most early exits within the accuracy budget. Only cut between different
+        // confidences, since a threshold can't split equal ones.
+        Calibration best(double maxAccuracyLoss) {
+            Calibration best = exits(0);
+            for (int k = 1; k <= n; k++) {
+                if (k < n && confidence[k] == confidence[k - 1]) continue;
+                Calibration c = exits(k);
+                if (c.accuracyLoss() <= maxAccuracyLoss) {
+                    best = c;
+                }
+            }
+            return best;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File smallFile = new File(SMALL_FILE);
+        File bigFile = ModelFile.defaultFile();
+        double maxLoss = 0.001;
+        int smallEpochs = 5;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--small":
+                    smallFile = new File(args[++i]);
+                    break;
+                case "--big":
+                    bigFile = new File(args[++i]);
+                    break;
+                case "--max-loss":
+                    maxLoss = Double.parseDouble(args[++i]);
+                    break;
+                case "--small-epochs":
+                    smallEpochs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        Brain big = ModelFile.load(bigFile);
+        Brain small;
+        if (smallFile.exists()) {
+            small = ModelFile.load(smallFile);
+        } else {
+            IdxDataset trainingSet = Evaluation.trainingSet();
+            float[][] inputs = trainingSet.inputs();
+            float[][] targets = trainingSet.oneHotTargets(TestTwo.NUM_CLASSES);
+            System.out.println("Training the small model " + Arrays.toString(SMALL_ARCHITECTURE) + "...");
+            small = new Brain(SMALL_ARCHITECTURE);
+            small.train(inputs, targets, 0.1f, smallEpochs, 32, Runtime.getRuntime().availableProcessors());
+            ModelFile.save(small, smallFile);
+            System.out.println("Small model saved to " + smallFile);
+        }
+
+        // Pick the threshold on one half of the test set and report on the other,
+        // so the reported numbers aren't tuned to the data they're measured on.
+        // The set is ordered (by label folder, or by writer in the IDX files), so
+        // the halves are drawn from a fixed shuffle.
+        IdxDataset testSet = Evaluation.testSet();
+        float[][] inputs = testSet.inputs();
+        int[] labels = Evaluation.labels(testSet);
+        int[] order = new int[inputs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(42);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+        int half = inputs.length / 2;
+        float[][] tuneInputs = new float[half][];
+        int[] tuneLabels = new int[half];
+        float[][] checkInputs = new float[inputs.length - half][];
+        int[] checkLabels = new int[inputs.length - half];
+        for (int i = 0; i < order.length; i++) {
+            if (i < half) {
+                tuneInputs[i] = inputs[order[i]];
+                tuneLabels[i] = labels[order[i]];
+            } else {
+                checkInputs[i - half] = inputs[order[i]];
+                checkLabels[i - half] = labels[order[i]];
+            }
+        }
+
+        Calibration chosen = calibrate(small, big, tuneInputs, tuneLabels, maxLoss);
+        Outcomes check = new Outcomes(small, big, checkInputs, checkLabels);
+        double smallMicros = Pruner.microsPerImage(small, checkInputs);
+        double bigMicros = Pruner.microsPerImage(big, checkInputs);
+
+        System.out.printf("Small model %s: %.2f us/image; large model %s: %.2f us/image%n", smallFile, smallMicros,
+                          bigFile, bigMicros);
+        System.out.printf("Threshold for at most %.2f%% accuracy loss (on %d tuning samples): %.4f%n%n",
+                          maxLoss * 100, tuneInputs.length, chosen.threshold);
+        System.out.printf("On %d held-back samples:%n", checkInputs.length);
+        System.out.println("threshold  early exit  accuracy  loss vs large  est. us/image");
+        float[] thresholds = {0.5f, 0.8f, 0.9f, 0.95f, 0.99f, 0.999f, chosen.threshold};
+        Arrays.sort(thresholds);
+        for (float t : thresholds) {
+            Calibration c = check.at(t);
+            System.out.printf("%9.4f  %9.2f%%  %7.2f%%  %12.2f%%  %13.2f%s%n", t, c.exitFraction * 100,
+                              c.accuracy * 100, c.accuracyLoss() * 100,
+                              smallMicros + (1 - c.exitFraction) * bigMicros, t == chosen.threshold ? "  <- chosen" : "");
+        }
+
+        CascadeClassifier cascade = new CascadeClassifier(small, big, chosen.threshold);
+        double cascadeMicros = Pruner.microsPerImage(cascade, checkInputs);
+        System.out.printf("%nMeasured: cascade %.2f us/image vs large model %.2f us/image (%.2fx), "
+                          + "%.2f%% of requests exited early%n", cascadeMicros, bigMicros, bigMicros / cascadeMicros,
+                          cascade.earlyExitFraction() * 100);
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Everything needed to continue a Brain.train run after a crash: the
+ * weights, how many epochs are done, the shuffle seed and current sample
+ * order, and the optimizer settings. Plain SGD keeps no per-weight state
+ * such as momentum, so the learning rate, batch size and clip threshold
+ * are its whole optimizer state.
+ *
+ * Layout (all little-endian):
+ *   int magic ("MNCK"), int version, int epoch, long seed,
+ *   float learningRate, int batchSize, float clipThreshold,
+ *   int sampleCount, int order[sampleCount],
+ *   int modelBytes, a complete ModelFile,
+ *   int crc32 of everything before it.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class Checkpoint {
+    static final int MAGIC = 0x4B434E4D; // "MNCK" read as a little-endian int
+    static final int VERSION = 1;
+    // Fixed fields, sample count, model length and CRC: the size with no samples and an empty model
+    static final int MIN_BYTES = 4 + 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4;
+
+    final Brain brain;       // A private copy of the weights
+    final int epoch;         // Epochs completed
+    final long seed;         // Shuffle seed of the run
+    final float learningRate;
+    final int batchSize;
+    final float clipThreshold;
+    final int[] order;       // Sample order after the last completed epoch's shuffle
+
+    Checkpoint(Brain brain, int epoch, long seed, float learningRate, int batchSize, float clipThreshold, int[] order) {
+        this.brain = brain;
+        this.epoch = epoch;
+        this.seed = seed;
+        this.learningRate = learningRate;
+        this.batchSize = batchSize;
+        this.clipThreshold = clipThreshold;
+        this.order = order;
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    public Brain brain() {
+        return brain;
+    }
+
+    // Writes the checkpoint through a temp file and an atomic rename.
+    public void save(File file) throws IOException {
+        ByteBuffer model = ModelFile.encode(brain);
+        int size = MIN_BYTES + 4 * order.length + model.remaining();
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(epoch);
+        buffer.putLong(seed);
+        buffer.putFloat(learningRate);
+        buffer.putInt(batchSize);
+        buffer.putFloat(clipThreshold);
+        buffer.putInt(order.length);
+        buffer.asIntBuffer().put(order);
+        buffer.position(buffer.position() + 4 * order.length);
+        buffer.putInt(model.remaining());
+        buffer.put(model);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        ModelFile.writeAtomically(buffer, file);
+    }
+
+    public static Checkpoint load(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.remaining() < MIN_BYTES) {
+            throw new IOException("Checkpoint file is truncated (" + buffer.remaining() + " bytes): " + file);
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a checkpoint file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+        }
+        int end = buffer.limit() - 4;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(end));
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            throw new IOException("Checksum mismatch in " + file);
+        }
+        int epoch = buffer.getInt();
+        long seed = buffer.getLong();
+        float learningRate = buffer.getFloat();
+        int batchSize = buffer.getInt();
+        float clipThreshold = buffer.getFloat();
+        int sampleCount = buffer.getInt();
+        if (sampleCount < 0 || buffer.remaining() < 4L * sampleCount + 4) {
+            throw new IOException("Corrupt checkpoint header in " + file);
+        }
+        int[] order = new int[sampleCount];
+        buffer.asIntBuffer().get(order);
+        buffer.position(buffer.position() + 4 * sampleCount);
+        int modelBytes = buffer.getInt();
+        if (modelBytes != end - buffer.position()) {
+            throw new IOException("Checkpoint file has wrong length: " + file);
+        }
+        ByteBuffer model = buffer.slice(buffer.position(), modelBytes);
+        Brain brain = ModelFile.read(model, file.toString());
+        return new Checkpoint(brain, epoch, seed, learningRate, batchSize, clipThreshold, order);
+    }
+}
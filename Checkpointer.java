@@ -0,0 +1,91 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes training checkpoints on a background thread.
+ *
+ * Brain.train copies the weights at the end of an epoch (a few hundred KB,
+ * well under a millisecond) and hands the copy over; encoding, checksumming
+ * and fsync happen here, so training never waits on the disk. If a write is
+ * still running when the next checkpoint arrives, the older pending one is
+ * dropped in favour of the newer, so a slow disk can't build up a backlog.
+ *
+ *   try (Checkpointer checkpoints = new Checkpointer(new File("run.ckpt"), 1)) {
+ *       brain.train(inputs, targets, 0.1f, 10, 32, 1, checkpoints); // resumes if run.ckpt exists
+ *   }
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class Checkpointer implements Closeable {
+    private final File file;
+    private final int interval;
+    private final ThreadPoolExecutor writer;
+    private volatile IOException lastError;
+    private volatile int lastWrittenEpoch;
+
+    // Checkpoints to file every interval epochs.
+    public Checkpointer(File file, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be at least 1!");
+        }
+        this.file = file;
+        this.interval = interval;
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), r -> {
+            Thread thread = new Thread(r, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    public File file() {
+        return file;
+    }
+
+    // True if a checkpoint is due after the given number of completed epochs.
+    boolean due(int epoch, int epochs) {
+        return epoch % interval == 0 || epoch == epochs;
+    }
+
+    // The checkpoint to resume from, or null if there is none yet.
+    Checkpoint latest() throws IOException {
+        return file.isFile() ? Checkpoint.load(file) : null;
+    }
+
+    // Queues a checkpoint for writing and returns at once.
+    void submit(Checkpoint checkpoint) {
+        writer.execute(() -> {
+            try {
+                checkpoint.save(file);
+                lastWrittenEpoch = checkpoint.epoch;
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("Checkpoint failed: " + e);
+            }
+        });
+    }
+
+    // Epoch of the last checkpoint written successfully (0 if none).
+    public int lastWrittenEpoch() {
+        return lastWrittenEpoch;
+    }
+
+    public IOException lastError() {
+        return lastError;
+    }
+
+    // Finishes any pending write.
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
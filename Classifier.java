@@ -0,0 +1,19 @@
+/**
+ * Anything that can score a flattened image: the float Brain or a
+ * compressed copy of it.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public interface Classifier {
+    // Softmax probabilities for one input.
+    float[] pass(float[] input);
+
+    // Raw outputs (logits) for one input.
+    float[] forward(float[] input);
+
+    // Logits, probabilities and the predicted label from a single forward pass.
+    default Prediction predict(float[] input) {
+        return new Prediction(forward(input));
+    }
+}
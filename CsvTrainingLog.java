@@ -0,0 +1,58 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Training listener that appends one CSV row per epoch, and optionally per
+ * batch, for plotting or post-mortems of long runs.
+ *
+ * Columns: event, epoch, batch, samples, loss, accuracy, samples_per_sec,
+ * data_ms, forward_ms, backward_ms, update_ms, gc_count, gc_ms.
+ * The file is flushed after every epoch.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class CsvTrainingLog implements TrainingListener, Closeable {
+    static final String HEADER = "event,epoch,batch,samples,loss,accuracy,samples_per_sec,"
+                                 + "data_ms,forward_ms,backward_ms,update_ms,gc_count,gc_ms";
+
+    private final PrintWriter out;
+    private final boolean batches;
+
+    // Writes to file, replacing it. With batches set, every batch gets a row too.
+    public CsvTrainingLog(File file, boolean batches) throws IOException {
+        this.out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        this.batches = batches;
+        out.println(HEADER);
+    }
+
+    @Override
+    public synchronized void batchFinished(TrainingStats stats) {
+        if (batches) {
+            write("batch", stats);
+        }
+    }
+
+    @Override
+    public synchronized void epochFinished(TrainingStats stats) {
+        write("epoch", stats);
+        out.flush();
+    }
+
+    private void write(String event, TrainingStats stats) {
+        out.printf(Locale.ROOT, "%s,%d,%d,%d,%.6f,%.6f,%.1f,%.3f,%.3f,%.3f,%.3f,%d,%d%n",
+                   event, stats.epoch(), stats.batch(), stats.samples(), stats.loss(), stats.accuracy(),
+                   stats.samplesPerSecond(), stats.dataNanos() / 1e6, stats.forwardNanos() / 1e6,
+                   stats.backwardNanos() / 1e6, stats.updateNanos() / 1e6, stats.gcCount(), stats.gcMillis());
+    }
+
+    @Override
+    public synchronized void close() {
+        out.close();
+    }
+}
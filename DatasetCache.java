@@ -0,0 +1,185 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary cache of a PNG folder dataset (folder/0 .. folder/9).
+ *
+ * The first run decodes every PNG once and writes a compact file; later
+ * runs memory-map that file instead of decoding again. The cache is keyed
+ * by a fingerprint of the folder (names, sizes and modification times of
+ * all image files) and is rebuilt automatically when the folder changes.
+ * Decoding runs on all cores through ImageLoader. If the cache's folder
+ * is not writable the images are decoded into memory instead.
+ *
+ * File layout (big-endian):
+ *   int magic ('MNDC'), int version, long fingerprint,
+ *   int count, int rows, int cols,
+ *   count * rows * cols uint8 pixels, count uint8 labels.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class DatasetCache {
+    static final int MAGIC = 0x4D4E4443; // "MNDC"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+    static final int COUNT_OFFSET = 16;
+    static final int DECODE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private DatasetCache() {
+    }
+
+    // Returns the folder's images, from cacheFile when it is current, otherwise
+    // decoding the PNGs and (re)writing cacheFile first. Throws if the folder has
+    // no images at all, rather than caching an empty dataset.
+    public static IdxDataset open(File folder, File cacheFile, int rows, int cols, int numClasses) throws IOException {
+        File[][] files = listImages(folder, numClasses);
+        int total = 0;
+        for (File[] list : files) {
+            total += list.length;
+        }
+        if (total == 0) {
+            throw new IOException("No images found in " + folder.getAbsolutePath() + " (expects subfolders 0-"
+                                  + (numClasses - 1) + ")");
+        }
+        long fingerprint = fingerprint(files);
+        IdxDataset cached = tryMap(cacheFile, fingerprint, rows, cols);
+        if (cached != null) {
+            return cached;
+        }
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        if (!parent.canWrite()) {
+            System.out.println("Cannot write " + cacheFile + ", decoding " + folder + " into memory...");
+            return decode(files, rows, cols);
+        }
+        System.out.println("Building dataset cache " + cacheFile + " from " + folder + "...");
+        build(files, cacheFile, fingerprint, rows, cols);
+        cached = tryMap(cacheFile, fingerprint, rows, cols);
+        if (cached == null) {
+            throw new IOException("Could not read back " + cacheFile);
+        }
+        return cached;
+    }
+
+    // Image files per label, sorted by name so the fingerprint and order are stable.
+    static File[][] listImages(File folder, int numClasses) {
+        File[][] files = new File[numClasses][];
+        for (int label = 0; label < numClasses; label++) {
+            File labelFolder = new File(folder, String.valueOf(label));
+            File[] list = labelFolder.isDirectory() ? labelFolder.listFiles(File::isFile) : null;
+            if (list == null) {
+                System.err.println("Folder not found: " + labelFolder.getAbsolutePath());
+                list = new File[0];
+            }
+            Arrays.sort(list);
+            files[label] = list;
+        }
+        return files;
+    }
+
+    // 64-bit FNV-1a over label, name, size and mtime of every file.
+    static long fingerprint(File[][] files) {
+        long hash = 0xcbf29ce484222325L;
+        for (int label = 0; label < files.length; label++) {
+            hash = mix(hash, label);
+            hash = mix(hash, files[label].length);
+            for (File file : files[label]) {
+                hash = mix(hash, file.getName().hashCode());
+                hash = mix(hash, file.length());
+                hash = mix(hash, file.lastModified());
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Maps cacheFile if it exists and matches; returns null otherwise.
+    private static IdxDataset tryMap(File cacheFile, long fingerprint, int rows, int cols) throws IOException {
+        if (!cacheFile.isFile() || cacheFile.length() < HEADER_BYTES) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != fingerprint) {
+                return null;
+            }
+            int count = buffer.getInt();
+            if (buffer.getInt() != rows || buffer.getInt() != cols) {
+                return null;
+            }
+            long pixelBytes = (long) count * rows * cols;
+            if (buffer.remaining() != pixelBytes + count) {
+                return null;
+            }
+            ByteBuffer pixels = buffer.slice(HEADER_BYTES, (int) pixelBytes);
+            ByteBuffer labels = buffer.slice(HEADER_BYTES + (int) pixelBytes, count);
+            return new IdxDataset(pixels, labels, count, rows, cols);
+        }
+    }
+
+    // Decodes every image into heap buffers, for folders whose cache can't be written.
+    static IdxDataset decode(File[][] files, int rows, int cols) throws IOException {
+        ByteArrayOutputStream pixels = new ByteArrayOutputStream();
+        ByteArrayOutputStream labels = new ByteArrayOutputStream();
+        for (int label = 0; label < files.length; label++) {
+            int fileLabel = label;
+            ImageLoader.decode(files[label], rows, cols, DECODE_THREADS, (index, gray) -> {
+                pixels.write(gray);
+                labels.write(fileLabel);
+            });
+        }
+        return new IdxDataset(ByteBuffer.wrap(pixels.toByteArray()), ByteBuffer.wrap(labels.toByteArray()),
+                              labels.size(), rows, cols);
+    }
+
+    // Decodes every image and writes the cache through a temp file and an atomic rename.
+    private static void build(File[][] files, File cacheFile, long fingerprint, int rows, int cols) throws IOException {
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(cacheFile.getName(), ".tmp", parent);
+        ByteArrayOutputStream labels = new ByteArrayOutputStream();
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(0); // count, patched below
+                out.writeInt(rows);
+                out.writeInt(cols);
+                for (int label = 0; label < files.length; label++) {
+                    int fileLabel = label;
+                    ImageLoader.decode(files[label], rows, cols, DECODE_THREADS, (index, gray) -> {
+                        out.write(gray);
+                        labels.write(fileLabel);
+                    });
+                }
+                labels.writeTo(out);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+                raf.seek(COUNT_OFFSET);
+                raf.writeInt(labels.size());
+            }
+            Files.move(temp.toPath(), cacheFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
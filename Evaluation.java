@@ -0,0 +1,282 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * Scores a whole labelled dataset and summarizes the result: accuracy,
+ * mean log loss, per-class precision and recall, the confusion matrix and
+ * a calibration table (how often predictions at a given confidence are
+ * actually right, and the expected calibration error).
+ *
+ * A Brain is scored with batched matrix products spread over all cores;
+ * other classifiers one sample at a time, also in parallel. Either can
+ * instead run serially on the calling thread.
+ *
+ * Usage: java Evaluation [--model file] [--int8] [--verbose | --errors]
+ * Reads t10k-images-idx3-ubyte / t10k-labels-idx1-ubyte, or the "test"
+ * folder (subfolders 0-9, falling back to "train") when they are missing.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class Evaluation {
+    static final int CALIBRATION_BINS = 10;
+
+    private final int classes;
+    private final int samples;
+    private final int[][] confusion;      // confusion[actual][predicted]
+    private final double logLoss;         // Summed over samples
+    private final int[] binCounts;        // Calibration bins by confidence
+    private final int[] binCorrect;
+    private final double[] binConfidence; // Summed confidence per bin
+    private final long elapsedNanos;
+
+    private Evaluation(int classes, int samples, int[][] confusion, double logLoss, int[] binCounts,
+                       int[] binCorrect, double[] binConfidence, long elapsedNanos) {
+        this.classes = classes;
+        this.samples = samples;
+        this.confusion = confusion;
+        this.logLoss = logLoss;
+        this.binCounts = binCounts;
+        this.binCorrect = binCorrect;
+        this.binConfidence = binConfidence;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // Scores every input. If perSample is not null it receives one Prediction per input.
+    public static Evaluation evaluate(Classifier classifier, float[][] inputs, int[] labels, Prediction[] perSample) {
+        return evaluate(classifier, inputs, labels, perSample, true);
+    }
+    
+    // Same, on the calling thread only when parallel is false.
+    public static Evaluation evaluate(Classifier classifier, float[][] inputs, int[] labels, Prediction[] perSample,
+                                      boolean parallel) {
+        if (inputs.length != labels.length) {
+            throw new IllegalArgumentException("Inputs and labels differ in length!");
+        }
+        long start = System.nanoTime();
+        float[][] logits;
+        if (classifier instanceof Brain) {
+            Brain brain = (Brain) classifier;
+            Layer[] layers = brain.getLayers();
+            logits = new float[inputs.length][layers[layers.length - 1].neuronCount()];
+            brain.passBatch(inputs, logits, null, parallel);
+        } else {
+            logits = new float[inputs.length][];
+            IntStream range = IntStream.range(0, inputs.length);
+            if (parallel) {
+                range = range.parallel();
+            }
+            range.forEach(i -> logits[i] = classifier.forward(inputs[i]));
+        }
+
+        int classes = inputs.length > 0 ? logits[0].length : 0;
+        int[][] confusion = new int[classes][classes];
+        int[] binCounts = new int[CALIBRATION_BINS];
+        int[] binCorrect = new int[CALIBRATION_BINS];
+        double[] binConfidence = new double[CALIBRATION_BINS];
+        double logLoss = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            Prediction prediction = new Prediction(logits[i]);
+            int label = labels[i];
+            int predicted = prediction.label();
+            confusion[label][predicted]++;
+            logLoss -= prediction.logProbability(label);
+            float confidence = prediction.confidence();
+            int bin = Math.min(CALIBRATION_BINS - 1, (int) (confidence * CALIBRATION_BINS));
+            binCounts[bin]++;
+            binConfidence[bin] += confidence;
+            if (predicted == label) {
+                binCorrect[bin]++;
+            }
+            if (perSample != null) {
+                perSample[i] = prediction;
+            }
+        }
+        return new Evaluation(classes, inputs.length, confusion, logLoss, binCounts, binCorrect, binConfidence,
+                              System.nanoTime() - start);
+    }
+
+    public int samples() {
+        return samples;
+    }
+
+    public double accuracy() {
+        int correct = 0;
+        for (int c = 0; c < classes; c++) {
+            correct += confusion[c][c];
+        }
+        return samples > 0 ? (double) correct / samples : 0;
+    }
+
+    // Mean cross-entropy of the true labels.
+    public double logLoss() {
+        return samples > 0 ? logLoss / samples : 0;
+    }
+
+    // Of the samples predicted as c, the fraction that really are c.
+    public double precision(int c) {
+        int predicted = 0;
+        for (int actual = 0; actual < classes; actual++) {
+            predicted += confusion[actual][c];
+        }
+        return predicted > 0 ? (double) confusion[c][c] / predicted : 0;
+    }
+
+    // Of the samples that are c, the fraction predicted as c.
+    public double recall(int c) {
+        int actual = 0;
+        for (int predicted = 0; predicted < classes; predicted++) {
+            actual += confusion[c][predicted];
+        }
+        return actual > 0 ? (double) confusion[c][c] / actual : 0;
+    }
+
+    // Number of samples of class actual that were predicted as predicted.
+    public int count(int actual, int predicted) {
+        return confusion[actual][predicted];
+    }
+
+    // Expected calibration error: the sample-weighted mean of |accuracy - confidence| over the bins.
+    public double calibrationError() {
+        double error = 0;
+        for (int b = 0; b < CALIBRATION_BINS; b++) {
+            if (binCounts[b] > 0) {
+                error += Math.abs(binCorrect[b] - binConfidence[b]) / samples;
+            }
+        }
+        return error;
+    }
+
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Samples: %d, scored in %.1f ms (%.0f samples/s)%n", samples, elapsedNanos / 1e6,
+                                samples * 1e9 / Math.max(1, elapsedNanos)));
+        sb.append(String.format("Accuracy: %.2f%%, log loss: %.4f%n", accuracy() * 100, logLoss()));
+
+        sb.append(String.format("%nclass  precision  recall   count%n"));
+        for (int c = 0; c < classes; c++) {
+            int actual = 0;
+            for (int p = 0; p < classes; p++) {
+                actual += confusion[c][p];
+            }
+            sb.append(String.format("%5d  %8.2f%%  %6.2f%%  %6d%n", c, precision(c) * 100, recall(c) * 100, actual));
+        }
+
+        sb.append(String.format("%nConfusion matrix (rows: actual, columns: predicted)%n      "));
+        for (int p = 0; p < classes; p++) {
+            sb.append(String.format("%6d", p));
+        }
+        sb.append(String.format("%n"));
+        for (int a = 0; a < classes; a++) {
+            sb.append(String.format("%6d", a));
+            for (int p = 0; p < classes; p++) {
+                sb.append(String.format("%6d", confusion[a][p]));
+            }
+            sb.append(String.format("%n"));
+        }
+
+        sb.append(String.format("%nCalibration%nconfidence   count  mean conf  accuracy%n"));
+        for (int b = 0; b < CALIBRATION_BINS; b++) {
+            if (binCounts[b] == 0) continue;
+            sb.append(String.format("%.1f - %.1f  %7d  %8.2f%%  %7.2f%%%n", (double) b / CALIBRATION_BINS,
+                                    (double) (b + 1) / CALIBRATION_BINS, binCounts[b],
+                                    binConfidence[b] / binCounts[b] * 100, 100.0 * binCorrect[b] / binCounts[b]));
+        }
+        sb.append(String.format("Expected calibration error: %.4f%n", calibrationError()));
+        return sb.toString();
+    }
+
+    // The t10k IDX files, or else the "test" folder (falling back to "train") through its cache.
+    static IdxDataset testSet() throws IOException {
+        File idxImages = new File("t10k-images-idx3-ubyte");
+        File idxLabels = new File("t10k-labels-idx1-ubyte");
+        if (idxImages.exists() && idxLabels.exists()) {
+            return IdxDataset.open(idxImages.toPath(), idxLabels.toPath());
+        }
+        String folder = new File("test").isDirectory() ? "test" : "train";
+        return DatasetCache.open(new File(folder), new File(folder + ".cache"), TestTwo.IMAGE_HEIGHT,
+                                 TestTwo.IMAGE_WIDTH, TestTwo.NUM_CLASSES);
+    }
+
+    // The training IDX files, or else the "train" folder through its cache.
+    static IdxDataset trainingSet() throws IOException {
+        File idxImages = new File("train-images-idx3-ubyte");
+        File idxLabels = new File("train-labels-idx1-ubyte");
+        if (idxImages.exists() && idxLabels.exists()) {
+            return IdxDataset.open(idxImages.toPath(), idxLabels.toPath());
+        }
+        return DatasetCache.open(new File("train"), new File("train.cache"), TestTwo.IMAGE_HEIGHT,
+                                 TestTwo.IMAGE_WIDTH, TestTwo.NUM_CLASSES);
+    }
+
+    static int[] labels(IdxDataset dataset) {
+        int[] labels = new int[dataset.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = dataset.label(i);
+        }
+        return labels;
+    }
+
+    public static void main(String[] args) {
+        File modelFile = ModelFile.defaultFile();
+        boolean int8 = false;
+        boolean verbose = false;
+        boolean errorsOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model":
+                    modelFile = new File(args[++i]);
+                    break;
+                case "--int8":
+                    int8 = true;
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                case "--errors":
+                    errorsOnly = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        float[][] inputs;
+        int[] labels;
+        Classifier classifier;
+        try {
+            IdxDataset dataset = testSet();
+            inputs = dataset.inputs();
+            labels = labels(dataset);
+            Brain brain = ModelFile.load(modelFile);
+            classifier = int8 ? QuantizedBrain.quantize(brain) : brain;
+            System.out.println("Evaluating " + modelFile + (int8 ? " (int8)" : "") + " on " + inputs.length + " samples");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // The first run warms up the JIT; the second is the one reported.
+        evaluate(classifier, inputs, labels, null);
+        Prediction[] predictions = verbose || errorsOnly ? new Prediction[inputs.length] : null;
+        Evaluation result = evaluate(classifier, inputs, labels, predictions);
+
+        if (predictions != null) {
+            for (int i = 0; i < predictions.length; i++) {
+                Prediction p = predictions[i];
+                if (verbose || p.label() != labels[i]) {
+                    System.out.printf("%6d  label %d  predicted %d  confidence %.4f%s%n", i, labels[i], p.label(),
+                                      p.confidence(), p.label() != labels[i] ? "  WRONG" : "");
+                }
+            }
+            System.out.println();
+        }
+        System.out.print(result.report());
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that computes the gradients of one mini-batch in parallel.
+ *
+ * The batch is split into one shard per worker. Each worker writes into
+ * its own TrainingBuffers, and the halves are summed pairwise on the way
+ * back up, so the full gradient ends up in the first worker's buffers.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+class GradientTask extends RecursiveTask<Double> {
+    private static final long serialVersionUID = 1L; // Never serialized; ForkJoinTask is Serializable
+
+    private final Layer[] layers;
+    private final float[][] inputs;
+    private final float[][] targets;
+    private final int[] indices;
+    private final int start;
+    private final int rows;
+    private final TrainingBuffers[] workers;
+    private final int shards;
+    private final int lo;
+    private final int hi;
+
+    // Covers samples indices[start .. start + rows) using the first `shards` workers.
+    GradientTask(Layer[] layers, float[][] inputs, float[][] targets, int[] indices,
+                 int start, int rows, TrainingBuffers[] workers, int shards) {
+        this(layers, inputs, targets, indices, start, rows, workers, shards, 0, shards);
+    }
+
+    private GradientTask(Layer[] layers, float[][] inputs, float[][] targets, int[] indices,
+                         int start, int rows, TrainingBuffers[] workers, int shards, int lo, int hi) {
+        this.layers = layers;
+        this.inputs = inputs;
+        this.targets = targets;
+        this.indices = indices;
+        this.start = start;
+        this.rows = rows;
+        this.workers = workers;
+        this.shards = shards;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    // Returns the summed loss of the shards in [lo, hi); their gradients end up in workers[lo].
+    @Override
+    protected Double compute() {
+        if (hi - lo == 1) {
+            int from = (int) ((long) rows * lo / shards);
+            int to = (int) ((long) rows * (lo + 1) / shards);
+            return workers[lo].computeGradients(layers, inputs, targets, indices, start + from, to - from);
+        }
+        int mid = (lo + hi) >>> 1;
+        GradientTask left = new GradientTask(layers, inputs, targets, indices, start, rows, workers, shards, lo, mid);
+        GradientTask right = new GradientTask(layers, inputs, targets, indices, start, rows, workers, shards, mid, hi);
+        right.fork();
+        double loss = left.compute();
+        loss += right.join();
+        workers[lo].addGradients(workers[mid]);
+        return loss;
+    }
+}
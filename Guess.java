@@ -1,6 +1,4 @@
 import java.io.File;
-import java.io.ObjectInputStream;
-import java.io.FileInputStream;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
@@ -19,10 +17,13 @@ public class Guess {
     public static void main(String[] args) {
         try {
             // Load the trained network
-            ObjectInputStream ois = new ObjectInputStream(new FileInputStream("trained_brain.ser"));
-            Brain brain = (Brain) ois.readObject();
-            ois.close();
-            System.out.println("Trained network loaded from trained_brain.ser");
+            File modelFile = ModelFile.defaultFile();
+            Classifier brain = ModelFile.load(modelFile);
+            System.out.println("Trained network loaded from " + modelFile);
+            if (args.length > 0 && args[0].equals("--int8")) {
+                brain = QuantizedBrain.quantize((Brain) brain);
+                System.out.println("Using int8 quantized network");
+            }
             
             // Load the image "image.png"
             File imgFile = new File("image.png");
@@ -33,7 +34,7 @@ public class Guess {
             }
             
             // Convert image to float array
-            float[] input = imageToFloatArray(img);
+            float[] input = ImageLoader.toFloats(img);
             
             // Compute average pixel value
             float sum = 0;
@@ -42,12 +43,11 @@ public class Guess {
             }
             float avgPixel = sum / input.length;
             
-            // Get raw logits (using forward pass without softmax) and softmax output (for inference)
-            float[] rawLogits = brain.forward(input);
-            float[] softmaxOutput = brain.pass(input);
-            
-            // Determine predicted label
-            int predicted = argmax(softmaxOutput);
+            // Logits, softmax output and predicted label from one forward pass
+            Prediction prediction = brain.predict(input);
+            float[] rawLogits = prediction.logits();
+            float[] softmaxOutput = prediction.probabilities();
+            int predicted = prediction.label();
             
             // Print the results
             System.out.println("--------------------------------------------------");
@@ -68,24 +68,6 @@ public class Guess {
         }
     }
     
-    // Converts a BufferedImage (assumed 28x28) to a normalized float array.
-    // Uses the average of R, G, and B channels.
-    public static float[] imageToFloatArray(BufferedImage img) {
-        float[] result = new float[INPUT_SIZE];
-        int index = 0;
-        for (int y = 0; y < IMAGE_HEIGHT; y++) {
-            for (int x = 0; x < IMAGE_WIDTH; x++) {
-                int rgb = img.getRGB(x, y);
-                int r = (rgb >> 16) & 0xff;
-                int g = (rgb >> 8) & 0xff;
-                int b = rgb & 0xff;
-                int gray = (r + g + b) / 3;
-                result[index++] = gray / 255.0f;
-            }
-        }
-        return result;
-    }
-    
     // Returns the index of the maximum value in the array.
     public static int argmax(float[] arr) {
         int index = 0;
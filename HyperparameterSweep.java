@@ -0,0 +1,270 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains many configurations (architecture, learning rate, batch size) in
+ * one JVM and ranks them on a held-out split of the training data.
+ *
+ * The dataset is decoded once; every trial reads the same input and
+ * target arrays, which training never writes, so ten concurrent trials
+ * cost one copy of the data instead of ten. At most `concurrency` trials
+ * train at a time, each on one thread, which also scores it on the
+ * held-out split.
+ *
+ * Trials are cut by successive halving: everyone trains a few epochs, the
+ * best 1/eta (by held-out accuracy) continue for eta times as many epochs
+ * in total, and so on up to the full epoch budget, so most of the compute
+ * goes to the promising configurations.
+ *
+ * Usage: java HyperparameterSweep [--arch 784-128-64-10,784-256-10] [--lr 0.05,0.1,0.2]
+ *                                 [--batch 32] [--epochs 8] [--eta 2] [--concurrency N]
+ *                                 [--holdout 0.1] [--save best.bin]
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class HyperparameterSweep {
+    // One configuration and how far it got.
+    static final class Trial {
+        final int[] architecture;
+        final float learningRate;
+        final int batchSize;
+        final Brain brain;
+        int epochs;           // Epochs trained so far
+        double accuracy;      // Held-out, after the last rung it ran
+        double logLoss;
+        long trainNanos;
+        int lastRung;
+
+        Trial(int[] architecture, float learningRate, int batchSize) {
+            this.architecture = architecture;
+            this.learningRate = learningRate;
+            this.batchSize = batchSize;
+            this.brain = new Brain(architecture);
+            // Trials train side by side, so each epoch line names its trial.
+            brain.setPrintEpochLoss(false);
+            brain.addTrainingListener(new TrainingListener() {
+                @Override
+                public void epochFinished(TrainingStats stats) {
+                    System.out.printf("  %-32s epoch %d: loss %.4f%n", name(), epochs + stats.epoch(), stats.loss());
+                }
+            });
+        }
+
+        String name() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < architecture.length; i++) {
+                sb.append(i > 0 ? "-" : "").append(architecture[i]);
+            }
+            return sb.append(" lr=").append(learningRate).append(" batch=").append(batchSize).toString();
+        }
+    }
+
+    private final float[][] trainInputs;
+    private final float[][] trainTargets;
+    private final float[][] holdoutInputs;
+    private final int[] holdoutLabels;
+    private final int concurrency;
+
+    // The arrays are shared by every trial and must not change during the sweep.
+    HyperparameterSweep(float[][] trainInputs, float[][] trainTargets, float[][] holdoutInputs, int[] holdoutLabels,
+                        int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1!");
+        }
+        this.trainInputs = trainInputs;
+        this.trainTargets = trainTargets;
+        this.holdoutInputs = holdoutInputs;
+        this.holdoutLabels = holdoutLabels;
+        this.concurrency = concurrency;
+    }
+
+    // Runs successive halving over trials with a budget of maxEpochs and returns
+    // every trial, best first.
+    List<Trial> run(List<Trial> trials, int maxEpochs, int eta) throws InterruptedException {
+        if (eta < 2) {
+            throw new IllegalArgumentException("Eta must be at least 2!");
+        }
+        // Rungs end at maxEpochs / eta^k epochs; stop halving once one trial or one epoch is left.
+        int halvings = 0;
+        for (long n = trials.size(), e = maxEpochs; n >= eta && e >= eta; n /= eta, e /= eta) {
+            halvings++;
+        }
+        List<Trial> alive = new ArrayList<>(trials);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (int rung = 0; rung <= halvings; rung++) {
+                int target = (int) Math.max(1, Math.round(maxEpochs / Math.pow(eta, halvings - rung)));
+                System.out.println("Rung " + rung + ": " + alive.size() + " trials to " + target + " epochs");
+                List<Callable<Void>> tasks = new ArrayList<>();
+                int rungIndex = rung;
+                for (Trial trial : alive) {
+                    tasks.add(() -> {
+                        advance(trial, target);
+                        trial.lastRung = rungIndex;
+                        return null;
+                    });
+                }
+                for (Future<Void> result : pool.invokeAll(tasks)) {
+                    try {
+                        result.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Trial failed", e.getCause());
+                    }
+                }
+                alive.sort(ranking());
+                for (Trial trial : alive) {
+                    System.out.printf("  %-32s %6.2f%%  log loss %.4f%n", trial.name(), trial.accuracy * 100,
+                                      trial.logLoss);
+                }
+                if (rung < halvings) {
+                    alive = new ArrayList<>(alive.subList(0, Math.max(1, alive.size() / eta)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        List<Trial> ranked = new ArrayList<>(trials);
+        ranked.sort(Comparator.comparingInt((Trial t) -> -t.lastRung).thenComparing(ranking()));
+        return ranked;
+    }
+
+    // Trains trial up to `epochs` epochs in total and scores it on the held-out split.
+    private void advance(Trial trial, int epochs) {
+        if (epochs > trial.epochs) {
+            long start = System.nanoTime();
+            trial.brain.train(trainInputs, trainTargets, trial.learningRate, epochs - trial.epochs, trial.batchSize, 1);
+            trial.trainNanos += System.nanoTime() - start;
+            trial.epochs = epochs;
+        }
+        // Serially, on this trial's thread, so scoring stays within --concurrency threads.
+        Evaluation result = Evaluation.evaluate(trial.brain, holdoutInputs, holdoutLabels, null, false);
+        trial.accuracy = result.accuracy();
+        trial.logLoss = result.logLoss();
+    }
+
+    private static Comparator<Trial> ranking() {
+        return Comparator.comparingDouble((Trial t) -> -t.accuracy).thenComparingDouble(t -> t.logLoss);
+    }
+
+    static String table(List<Trial> ranked) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%4s  %-32s %6s  %8s  %8s  %8s%n", "rank", "configuration", "epochs", "accuracy",
+                                "log loss", "train s"));
+        for (int i = 0; i < ranked.size(); i++) {
+            Trial t = ranked.get(i);
+            sb.append(String.format("%4d  %-32s %6d  %7.2f%%  %8.4f  %8.1f%n", i + 1, t.name(), t.epochs,
+                                    t.accuracy * 100, t.logLoss, t.trainNanos / 1e9));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String[] architectures = {"784-128-64-10", "784-256-10", "784-64-10"};
+        String[] learningRates = {"0.05", "0.1", "0.2"};
+        String[] batchSizes = {"32"};
+        int maxEpochs = 8;
+        int eta = 2;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        double holdout = 0.1;
+        File save = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--arch":
+                    architectures = args[++i].split(",");
+                    break;
+                case "--lr":
+                    learningRates = args[++i].split(",");
+                    break;
+                case "--batch":
+                    batchSizes = args[++i].split(",");
+                    break;
+                case "--epochs":
+                    maxEpochs = Integer.parseInt(args[++i]);
+                    break;
+                case "--eta":
+                    eta = Integer.parseInt(args[++i]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--holdout":
+                    holdout = Double.parseDouble(args[++i]);
+                    break;
+                case "--save":
+                    save = new File(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        // Decoded once; the split only rearranges references to the same rows.
+        IdxDataset dataset = Evaluation.trainingSet();
+        float[][] inputs = dataset.inputs();
+        float[][] targets = dataset.oneHotTargets(TestTwo.NUM_CLASSES);
+        int[] labels = Evaluation.labels(dataset);
+        int[] order = new int[inputs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(42);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+        int held = (int) (inputs.length * holdout);
+        int trainCount = inputs.length - held;
+        float[][] trainInputs = new float[trainCount][];
+        float[][] trainTargets = new float[trainCount][];
+        float[][] holdoutInputs = new float[held][];
+        int[] holdoutLabels = new int[held];
+        for (int i = 0; i < order.length; i++) {
+            if (i < trainCount) {
+                trainInputs[i] = inputs[order[i]];
+                trainTargets[i] = targets[order[i]];
+            } else {
+                holdoutInputs[i - trainCount] = inputs[order[i]];
+                holdoutLabels[i - trainCount] = labels[order[i]];
+            }
+        }
+
+        List<Trial> trials = new ArrayList<>();
+        for (String arch : architectures) {
+            String[] parts = arch.trim().split("-");
+            int[] architecture = new int[parts.length];
+            for (int p = 0; p < parts.length; p++) {
+                architecture[p] = Integer.parseInt(parts[p]);
+            }
+            for (String lr : learningRates) {
+                for (String batch : batchSizes) {
+                    trials.add(new Trial(architecture, Float.parseFloat(lr.trim()), Integer.parseInt(batch.trim())));
+                }
+            }
+        }
+        System.out.println("Sweeping " + trials.size() + " configurations on " + trainCount + " samples ("
+                           + held + " held out), " + concurrency + " at a time, up to " + maxEpochs + " epochs");
+
+        HyperparameterSweep sweep = new HyperparameterSweep(trainInputs, trainTargets, holdoutInputs, holdoutLabels,
+                                                            concurrency);
+        List<Trial> ranked = sweep.run(trials, maxEpochs, eta);
+        System.out.println();
+        System.out.print(table(ranked));
+        if (save != null) {
+            ModelFile.save(ranked.get(0).brain, save);
+            System.out.println("Best model saved to " + save);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MNIST dataset read from the standard IDX files
+ * (train-images-idx3-ubyte / train-labels-idx1-ubyte and the t10k pair),
+ * or from a DatasetCache file.
+ *
+ * Both files are memory-mapped, so opening a dataset reads only the
+ * headers. Pixels stay as unsigned bytes in the mapping and are turned
+ * into normalized floats only when asked for.
+ *
+ * Format: a big-endian int32 magic (0x00000803 for images, 0x00000801
+ * for labels), one big-endian int32 per dimension, then the data bytes.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class IdxDataset {
+    static final int IMAGES_MAGIC = 0x00000803;
+    static final int LABELS_MAGIC = 0x00000801;
+
+    private final ByteBuffer pixels; // count x rows x cols, positioned at the first pixel
+    private final ByteBuffer labels; // count bytes, positioned at the first label
+    private final int count;
+    private final int rows;
+    private final int cols;
+
+    // Wraps already-validated pixel and label buffers (also used by DatasetCache).
+    IdxDataset(ByteBuffer pixels, ByteBuffer labels, int count, int rows, int cols) {
+        this.pixels = pixels;
+        this.labels = labels;
+        this.count = count;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    // Maps an image file and its label file and checks that they agree.
+    public static IdxDataset open(Path imageFile, Path labelFile) throws IOException {
+        ByteBuffer images = map(imageFile);
+        ByteBuffer labels = map(labelFile);
+        if (images.remaining() < 16 || labels.remaining() < 8) {
+            throw new IOException("IDX file is truncated");
+        }
+        if (images.getInt() != IMAGES_MAGIC) {
+            throw new IOException("Not an IDX image file: " + imageFile);
+        }
+        if (labels.getInt() != LABELS_MAGIC) {
+            throw new IOException("Not an IDX label file: " + labelFile);
+        }
+        int count = images.getInt();
+        int rows = images.getInt();
+        int cols = images.getInt();
+        int labelCount = labels.getInt();
+        if (count < 0 || rows < 1 || cols < 1 || (long) rows * cols > Integer.MAX_VALUE) {
+            throw new IOException("Bad IDX image dimensions " + count + " x " + rows + " x " + cols + ": " + imageFile);
+        }
+        if (count != labelCount) {
+            throw new IOException("Image and label counts differ: " + count + " vs " + labelCount);
+        }
+        if (images.remaining() < (long) count * rows * cols || labels.remaining() < count) {
+            throw new IOException("IDX file is truncated");
+        }
+        return new IdxDataset(images.slice(), labels.slice(), count, rows, cols);
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buffer; // IDX headers are big-endian, the ByteBuffer default
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int pixelCount() {
+        return rows * cols;
+    }
+
+    public int label(int i) {
+        return labels.get(i) & 0xff;
+    }
+
+    // Zero-copy read-only view of sample i's raw uint8 pixels.
+    public ByteBuffer pixels(int i) {
+        int n = pixelCount();
+        return pixels.slice(i * n, n).asReadOnlyBuffer();
+    }
+
+    // Pixel p of sample i as an unsigned value in [0, 255].
+    public int pixel(int i, int p) {
+        return pixels.get(i * pixelCount() + p) & 0xff;
+    }
+
+    // Writes sample i normalized to [0, 1] into dst (same scale as ImageLoader.toFloats).
+    public void toFloats(int i, float[] dst) {
+        int n = pixelCount();
+        int base = i * n;
+        for (int p = 0; p < n; p++) {
+            dst[p] = (pixels.get(base + p) & 0xff) / 255.0f;
+        }
+    }
+
+    public float[] toFloats(int i) {
+        float[] result = new float[pixelCount()];
+        toFloats(i, result);
+        return result;
+    }
+
+    // All samples normalized in bulk, in the layout Brain.train expects.
+    public float[][] inputs() {
+        float[][] result = new float[count][];
+        for (int i = 0; i < count; i++) {
+            result[i] = toFloats(i);
+        }
+        return result;
+    }
+
+    // One-hot targets for all samples, in the layout Brain.train expects.
+    public float[][] oneHotTargets(int numClasses) {
+        float[][] result = new float[count][numClasses];
+        for (int i = 0; i < count; i++) {
+            result[i][label(i)] = 1.0f;
+        }
+        return result;
+    }
+
+    // Sequential source over all samples, for streaming training.
+    public SampleSource source() {
+        return new SampleSource() {
+            private int cursor;
+
+            @Override
+            public int pixelCount() {
+                return IdxDataset.this.pixelCount();
+            }
+
+            @Override
+            public void reset() {
+                cursor = 0;
+            }
+
+            @Override
+            public int next(byte[] dst, int offset) {
+                if (cursor >= count) {
+                    return -1;
+                }
+                int n = pixelCount();
+                pixels.get(cursor * n, dst, offset, n);
+                return label(cursor++);
+            }
+        };
+    }
+}
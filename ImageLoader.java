@@ -0,0 +1,194 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+/**
+ * Turns images into network inputs: the average of R, G and B as a byte,
+ * or divided by 255 as a float, row by row from the top-left corner.
+ *
+ * Pixels are read from the raster in one bulk call instead of one
+ * BufferedImage.getRGB(x, y) per pixel. 8-bit gray and palette images
+ * go through a 256-entry table built from the image's own color model, so
+ * the result is exactly what getRGB would give (a gray PNG is stored in a
+ * linear gray space, and getRGB converts it to sRGB); RGB images are
+ * averaged straight from their samples. Anything else is read with a
+ * single getRGB call over the whole region.
+ *
+ * decode reads many files at once on a small pool of threads and hands
+ * the results back in the order of the file list.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class ImageLoader {
+    public static final int IMAGE_WIDTH = 28;
+    public static final int IMAGE_HEIGHT = 28;
+
+    // Gray value of each sample of a TYPE_BYTE_GRAY image, as getRGB sees it.
+    private static final byte[] GRAY_TABLE = grayTable(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY));
+
+    // Receives decoded images in file order.
+    interface Sink {
+        void accept(int index, byte[] gray) throws IOException;
+    }
+
+    private ImageLoader() {
+    }
+
+    // A 28x28 image as a normalized float array.
+    public static float[] toFloats(BufferedImage img) {
+        float[] result = new float[IMAGE_WIDTH * IMAGE_HEIGHT];
+        toFloats(img, result, IMAGE_HEIGHT, IMAGE_WIDTH);
+        return result;
+    }
+
+    // The top-left rows x cols pixels of img, normalized to [0, 1], into dst.
+    static void toFloats(BufferedImage img, float[] dst, int rows, int cols) {
+        byte[] gray = new byte[rows * cols];
+        toGray(img, gray, rows, cols);
+        for (int i = 0; i < gray.length; i++) {
+            dst[i] = (gray[i] & 0xff) / 255.0f;
+        }
+    }
+
+    // The top-left rows x cols pixels of img as (r + g + b) / 3, into dst.
+    static void toGray(BufferedImage img, byte[] dst, int rows, int cols) {
+        int n = rows * cols;
+        Raster raster = img.getRaster();
+        int type = img.getType();
+        if (isByteSampled(raster, 1)) {
+            // Gray or palette: one byte per pixel, mapped through a table
+            byte[] table = type == BufferedImage.TYPE_BYTE_GRAY ? GRAY_TABLE : grayTable(img);
+            if (table != null) {
+                byte[] samples = (byte[]) raster.getDataElements(0, 0, cols, rows, null);
+                for (int i = 0; i < n; i++) {
+                    dst[i] = table[samples[i] & 0xff];
+                }
+                return;
+            }
+        }
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            int[] pixels = (int[]) raster.getDataElements(0, 0, cols, rows, null);
+            for (int i = 0; i < n; i++) {
+                int rgb = pixels[i];
+                dst[i] = (byte) ((((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3);
+            }
+            return;
+        }
+        if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && isByteSampled(raster, raster.getNumDataElements())) {
+            // Bands come back as R, G, B (, A) whatever the byte order in memory
+            int bands = raster.getNumDataElements();
+            byte[] samples = (byte[]) raster.getDataElements(0, 0, cols, rows, null);
+            for (int i = 0, s = 0; i < n; i++, s += bands) {
+                dst[i] = (byte) (((samples[s] & 0xff) + (samples[s + 1] & 0xff) + (samples[s + 2] & 0xff)) / 3);
+            }
+            return;
+        }
+        int[] pixels = img.getRGB(0, 0, cols, rows, null, 0, cols);
+        for (int i = 0; i < n; i++) {
+            int rgb = pixels[i];
+            dst[i] = (byte) ((((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3);
+        }
+    }
+
+    // True if every pixel is `elements` whole bytes in the data buffer.
+    private static boolean isByteSampled(Raster raster, int elements) {
+        return raster.getTransferType() == DataBuffer.TYPE_BYTE && raster.getNumDataElements() == elements
+               && raster.getSampleModel() instanceof ComponentSampleModel;
+    }
+
+    // Gray value for each possible byte of a one-byte-per-pixel image, or null if
+    // its color model can't be tabulated.
+    private static byte[] grayTable(BufferedImage img) {
+        int[] rgbs = new int[256];
+        if (img.getColorModel() instanceof IndexColorModel) {
+            IndexColorModel palette = (IndexColorModel) img.getColorModel();
+            palette.getRGBs(rgbs); // Entries past the palette size stay 0, as they read in the color model
+        } else if (img.getColorModel().getNumComponents() == 1) {
+            byte[] pixel = new byte[1];
+            for (int v = 0; v < 256; v++) {
+                pixel[0] = (byte) v;
+                rgbs[v] = img.getColorModel().getRGB(pixel);
+            }
+        } else {
+            return null;
+        }
+        byte[] table = new byte[256];
+        for (int v = 0; v < 256; v++) {
+            int rgb = rgbs[v];
+            table[v] = (byte) ((((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3);
+        }
+        return table;
+    }
+
+    // Reads and converts every file on up to `threads` threads, passing the results
+    // to sink in file order. Files that can't be read are reported and skipped.
+    static void decode(File[] files, int rows, int cols, int threads, Sink sink) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "image-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // At most a few images per thread are decoded ahead of the sink
+        int window = threads * 4;
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>(window);
+        try {
+            int next = 0;
+            for (int index = 0; index < files.length; index++) {
+                while (next < files.length && pending.size() < window) {
+                    File file = files[next++];
+                    pending.add(pool.submit(() -> decode(file, rows, cols)));
+                }
+                byte[] gray = await(pending.remove());
+                if (gray != null) {
+                    sink.accept(index, gray);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // One file, or null if it isn't a readable image.
+    private static byte[] decode(File file, int rows, int cols) {
+        BufferedImage img;
+        try {
+            img = ImageIO.read(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (img == null) {
+            return null;
+        }
+        if (img.getWidth() < cols || img.getHeight() < rows) {
+            System.err.println("Skipping " + file + ": smaller than " + cols + "x" + rows);
+            return null;
+        }
+        byte[] gray = new byte[rows * cols];
+        toGray(img, gray, rows, cols);
+        return gray;
+    }
+
+    private static byte[] await(Future<byte[]> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding images", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Image decoding failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Caller-owned scratch memory for one inference at a time.
+ *
+ * A context holds every intermediate activation of a forward pass, so
+ * Brain.pass and Brain.forward can run without allocating and without
+ * touching any state stored in the model. One Brain can be shared by any
+ * number of threads as long as each thread uses its own context.
+ *
+ * A context built for a batch holds up to that many samples per call,
+ * stored as flat row-major matrices (one row per sample).
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class InferenceContext {
+    final int capacity;          // Samples per call
+    final float[] inputs;        // Gathered input rows (batch contexts only)
+    final float[][] activations; // activations[l] is the output of layer l; the last one holds the logits
+    final float[] probabilities;
+    final SparseInput sparse;    // Nonzero inputs for the first layer
+
+    InferenceContext(Layer[] layers) {
+        this(layers, 1);
+    }
+
+    InferenceContext(Layer[] layers, int capacity) {
+        this.capacity = capacity;
+        inputs = capacity > 1 ? new float[capacity * layers[0].inputCount()] : null;
+        activations = new float[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            activations[l] = new float[capacity * layers[l].neuronCount()];
+        }
+        probabilities = new float[capacity * layers[layers.length - 1].neuronCount()];
+        sparse = new SparseInput(capacity, layers[0].inputCount());
+    }
+
+    // True if this context has the right buffer sizes for the given layers.
+    boolean fits(Layer[] layers) {
+        if (activations.length != layers.length) {
+            return false;
+        }
+        for (int l = 0; l < layers.length; l++) {
+            if (activations[l].length != capacity * layers[l].neuronCount()) {
+                return false;
+            }
+        }
+        return inputs == null || inputs.length == capacity * layers[0].inputCount();
+    }
+
+    // Raw outputs of the last forward pass run with this context.
+    public float[] logits() {
+        return activations[activations.length - 1];
+    }
+
+    // Softmax outputs of the last pass run with this context.
+    public float[] probabilities() {
+        return probabilities;
+    }
+}
@@ -0,0 +1,287 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Long-running HTTP scoring service for the trained network.
+ *
+ *   POST /predict  body: a 28x28 PNG, or 784 raw grayscale bytes
+ *                  reply: {"label":3,"confidence":...,"top3":[...],"probabilities":[...],
+ *                          "model":"trained_brain.bin#1"}
+ *   GET  /metrics  request and batch counters, throughput, p50/p99 latency,
+ *                  the live model version and reload counts
+ *   GET  /health   "ok"
+ *
+ * Each request gets its own virtual thread when the JDK has them (21+),
+ * otherwise a pooled platform thread. Requests are not scored one by one:
+ * a MicroBatcher groups whatever arrives within a short window into one
+ * batched forward pass.
+ *
+ * The model comes from a ModelRegistry: writing a new version of the model
+ * file (or, with --models, any new model file in that directory) swaps it
+ * in without a restart, and requests already running finish on the old one.
+ *
+ * A request that isn't scored within the timeout, or arrives while the
+ * server is stopping, gets a 503; one whose scoring throws gets a 500
+ * with a generic body, and the exception goes to the server's stderr.
+ *
+ * main turns on TCP_NODELAY for the JDK HTTP server through the JVM-wide
+ * sun.net.httpserver.nodelay property (unless already set). Programs that
+ * construct an InferenceServer themselves should pass
+ * -Dsun.net.httpserver.nodelay=true to avoid ~40 ms delayed-ACK stalls.
+ *
+ * Usage: java InferenceServer [--port 8080] [--model trained_brain.bin | --models dir]
+ *                             [--batch 64] [--window-ms 2] [--timeout-ms 5000]
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class InferenceServer {
+    static final int MAX_BODY = 1 << 20;
+    static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ModelRegistry registry;
+    private final MicroBatcher batcher;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final long startTime = System.nanoTime();
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    public InferenceServer(Brain brain, int port, int maxBatch, long windowMicros) throws IOException {
+        this(ModelRegistry.of(brain, "in-memory"), port, maxBatch, windowMicros);
+    }
+
+    public InferenceServer(ModelRegistry registry, int port, int maxBatch, long windowMicros) throws IOException {
+        this.registry = registry;
+        batcher = new MicroBatcher(registry, maxBatch, windowMicros * 1000);
+        executor = newRequestExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/predict", this::predict);
+        server.createContext("/metrics", this::metrics);
+        server.createContext("/health", exchange -> reply(exchange, 200, "text/plain", "ok\n"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Replies are written as headers then body; without TCP_NODELAY, Nagle's
+        // algorithm and delayed ACKs hold each keep-alive reply back by ~40 ms.
+        // The property is JVM-wide and read when the first HttpServer starts, so
+        // it is set here rather than for every program that embeds the server.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = 8080;
+        File model = ModelFile.defaultFile();
+        File models = null;
+        int maxBatch = Brain.INFERENCE_BATCH;
+        double windowMillis = 2;
+        long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--model":
+                    model = new File(args[++i]);
+                    break;
+                case "--models":
+                    models = new File(args[++i]);
+                    break;
+                case "--batch":
+                    maxBatch = Integer.parseInt(args[++i]);
+                    break;
+                case "--window-ms":
+                    windowMillis = Double.parseDouble(args[++i]);
+                    break;
+                case "--timeout-ms":
+                    timeoutMillis = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        ModelRegistry registry = models != null ? ModelRegistry.watch(models) : ModelRegistry.watchFile(model);
+        InferenceServer server = new InferenceServer(registry, port, maxBatch, (long) (windowMillis * 1000));
+        server.setTimeoutMillis(timeoutMillis);
+        server.start();
+        System.out.println("Serving " + registry.current() + " on http://localhost:" + server.port()
+                           + "/predict (batch " + maxBatch + ", window " + windowMillis + " ms)");
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+
+    // How long a request may wait for its batch before it gets a 503.
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void start() {
+        batcher.start();
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        batcher.stop();
+        executor.shutdown();
+        try {
+            registry.close();
+        } catch (IOException e) {
+            System.err.println("Could not stop watching models: " + e);
+        }
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // One virtual thread per request on JDK 21+; a cached pool of platform threads before that.
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void predict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                errors.incrementAndGet();
+                reply(exchange, 405, "text/plain", "Use POST\n");
+                return;
+            }
+            float[] input;
+            try {
+                input = decode(readBody(exchange.getRequestBody()));
+            } catch (IOException e) {
+                errors.incrementAndGet();
+                reply(exchange, 400, "text/plain", e.getMessage() + "\n");
+                return;
+            }
+            Prediction prediction;
+            try {
+                prediction = batcher.submit(input).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errors.incrementAndGet();
+                reply(exchange, 503, "text/plain", "Interrupted\n");
+                return;
+            } catch (TimeoutException e) {
+                errors.incrementAndGet();
+                reply(exchange, 503, "text/plain", "Timed out after " + timeoutMillis + " ms\n");
+                return;
+            } catch (ExecutionException e) {
+                errors.incrementAndGet();
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    reply(exchange, 503, "text/plain", "Server stopped\n");
+                } else {
+                    // Details stay in the server log; clients only learn that scoring failed.
+                    System.err.println("Scoring failed:");
+                    e.getCause().printStackTrace();
+                    reply(exchange, 500, "text/plain", "Internal error\n");
+                }
+                return;
+            }
+            reply(exchange, 200, "application/json", toJson(prediction));
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        long batches = batcher.batchCount();
+        StringBuilder sb = new StringBuilder();
+        sb.append("requests ").append(requests.get()).append('\n');
+        sb.append("errors ").append(errors.get()).append('\n');
+        sb.append("batches ").append(batches).append('\n');
+        sb.append(String.format(Locale.ROOT, "mean_batch_size %.2f%n",
+                                batches > 0 ? (double) batcher.batchedRequestCount() / batches : 0));
+        sb.append(String.format(Locale.ROOT, "requests_per_second %.1f%n", requests.get() / seconds));
+        sb.append("latency_p50_us ").append(latency.percentileMicros(0.50)).append('\n');
+        sb.append("latency_p99_us ").append(latency.percentileMicros(0.99)).append('\n');
+        sb.append("latency_max_us ").append(latency.maxMicros()).append('\n');
+        sb.append("model_version ").append(registry.current()).append('\n');
+        sb.append("model_swaps ").append(registry.swapCount()).append('\n');
+        sb.append("model_rejections ").append(registry.rejectionCount()).append('\n');
+        reply(exchange, 200, "text/plain", sb.toString());
+    }
+
+    // A PNG (recognized by its signature) or exactly 784 raw grayscale bytes.
+    static float[] decode(byte[] body) throws IOException {
+        if (body.length >= 4 && (body[0] & 0xff) == 0x89 && body[1] == 'P' && body[2] == 'N' && body[3] == 'G') {
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(body));
+            if (img == null || img.getWidth() != Guess.IMAGE_WIDTH || img.getHeight() != Guess.IMAGE_HEIGHT) {
+                throw new IOException("Expected a " + Guess.IMAGE_WIDTH + "x" + Guess.IMAGE_HEIGHT + " PNG");
+            }
+            return ImageLoader.toFloats(img);
+        }
+        if (body.length != Guess.INPUT_SIZE) {
+            throw new IOException("Expected a PNG or " + Guess.INPUT_SIZE + " raw bytes, got " + body.length + " bytes");
+        }
+        float[] input = new float[Guess.INPUT_SIZE];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (body[i] & 0xff) / 255.0f;
+        }
+        return input;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY + 1);
+        if (body.length > MAX_BODY) {
+            throw new IOException("Request body too large");
+        }
+        return body;
+    }
+
+    static String toJson(Prediction prediction) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"label\":").append(prediction.label());
+        sb.append(",\"confidence\":").append(prediction.confidence());
+        sb.append(",\"top3\":[");
+        int[] top = prediction.topK(3);
+        for (int i = 0; i < top.length; i++) {
+            sb.append(i > 0 ? "," : "").append(top[i]);
+        }
+        sb.append("],\"probabilities\":[");
+        for (int i = 0; i < prediction.classCount(); i++) {
+            sb.append(i > 0 ? "," : "").append(prediction.probability(i));
+        }
+        sb.append("]");
+        if (prediction.model() != null) {
+            sb.append(",\"model\":\"").append(prediction.model()).append('"');
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private static void reply(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
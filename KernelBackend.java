@@ -0,0 +1,21 @@
+/**
+ * The dense kernels that have a SIMD implementation. Kernels routes dot,
+ * axpy, clippedUpdate and gemmNT here when a backend was loaded, and runs
+ * its own scalar loops otherwise.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+interface KernelBackend {
+    // Short description for logs and benchmarks, e.g. "Vector API, 256-bit".
+    String name();
+
+    // Same contracts as the Kernels methods of the same names.
+    float dot(float[] a, int aOff, float[] b, int bOff, int n);
+
+    void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n);
+
+    void clippedUpdate(float[] w, float[] g, float scale, float limit, int n);
+
+    void gemmNT(float[] a, float[] b, float[] bias, float[] c, int m, int n, int k);
+}
@@ -0,0 +1,282 @@
+/**
+ * Dense linear-algebra kernels shared by the layers and the trainer.
+ *
+ * All matrices are flat row-major float arrays. The matrix-matrix
+ * products are blocked so a tile of the weight matrix stays in cache
+ * while every sample of a batch streams past it.
+ *
+ * dot, axpy, clippedUpdate and gemmNT run on a SIMD backend when one is
+ * available: VectorKernels (see vector/), which needs the incubating
+ * jdk.incubator.vector module at compile and run time. Without it, or with
+ * -Dkernels.scalar=true, they run the scalar loops below.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+final class Kernels {
+    // Weight rows per tile: 16 rows of 784 floats is ~50 KB, which fits in L2.
+    static final int BLOCK = 16;
+
+    // The SIMD backend, or null to use the scalar loops.
+    static final KernelBackend VECTOR = loadVector();
+
+    private Kernels() {
+    }
+
+    // Loads VectorKernels by name if the Vector API module is in the boot layer,
+    // so this class still compiles and runs without it.
+    private static KernelBackend loadVector() {
+        if (Boolean.getBoolean("kernels.scalar") || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (KernelBackend) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // Module present but VectorKernels not compiled
+        }
+    }
+
+    // Which implementation the dispatching kernels use.
+    static String backend() {
+        return VECTOR != null ? VECTOR.name() : "scalar";
+    }
+
+    // As scalarDot, on the backend if there is one.
+    static float dot(float[] a, int aOff, float[] b, int bOff, int n) {
+        if (VECTOR != null) {
+            return VECTOR.dot(a, aOff, b, bOff, n);
+        }
+        return scalarDot(a, aOff, b, bOff, n);
+    }
+
+    // As scalarAxpy, on the backend if there is one.
+    static void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n) {
+        if (VECTOR != null) {
+            VECTOR.axpy(alpha, x, xOff, y, yOff, n);
+        } else {
+            scalarAxpy(alpha, x, xOff, y, yOff, n);
+        }
+    }
+
+    // As scalarClippedUpdate, on the backend if there is one.
+    static void clippedUpdate(float[] w, float[] g, float scale, float limit, int n) {
+        if (VECTOR != null) {
+            VECTOR.clippedUpdate(w, g, scale, limit, n);
+        } else {
+            scalarClippedUpdate(w, g, scale, limit, n);
+        }
+    }
+
+    // As scalarGemmNT, on the backend if there is one.
+    static void gemmNT(float[] a, float[] b, float[] bias, float[] c, int m, int n, int k) {
+        if (VECTOR != null) {
+            VECTOR.gemmNT(a, b, bias, c, m, n, k);
+        } else {
+            scalarGemmNT(a, b, bias, c, m, n, k);
+        }
+    }
+
+    // Returns sum of a[aOff + i] * b[bOff + i] for i in [0, n).
+    // A single running sum is a loop-carried dependency that keeps C2 from
+    // vectorizing or pipelining the loop, so four independent partial sums
+    // are kept and combined at the end.
+    static float scalarDot(float[] a, int aOff, float[] b, int bOff, int n) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 4 <= n; i += 4) {
+            s0 += a[aOff + i] * b[bOff + i];
+            s1 += a[aOff + i + 1] * b[bOff + i + 1];
+            s2 += a[aOff + i + 2] * b[bOff + i + 2];
+            s3 += a[aOff + i + 3] * b[bOff + i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += a[aOff + i] * b[bOff + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    // y[yOff + i] += alpha * x[xOff + i] for i in [0, n).
+    // No loop-carried dependency, so C2 turns this into packed SIMD on its own.
+    static void scalarAxpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] += alpha * x[xOff + i];
+        }
+    }
+
+    // w[i] -= clamp(scale * g[i], -limit, limit) for i in [0, n).
+    // Branch-free min/max keeps the loop vectorizable.
+    static void scalarClippedUpdate(float[] w, float[] g, float scale, float limit, int n) {
+        for (int i = 0; i < n; i++) {
+            w[i] -= Math.max(-limit, Math.min(limit, scale * g[i]));
+        }
+    }
+
+    // c[m x n] = a[m x k] * b[n x k]^T + bias[n]
+    // Forward pass: a is a batch of inputs, b is a layer's weight matrix.
+    // Four rows of a are processed together so each weight is loaded once per
+    // four samples and the four running sums can proceed independently.
+    static void scalarGemmNT(float[] a, float[] b, float[] bias, float[] c, int m, int n, int k) {
+        for (int j0 = 0; j0 < n; j0 += BLOCK) {
+            int j1 = Math.min(j0 + BLOCK, n);
+            int r = 0;
+            for (; r + 4 <= m; r += 4) {
+                int a0 = r * k, a1 = a0 + k, a2 = a1 + k, a3 = a2 + k;
+                for (int j = j0; j < j1; j++) {
+                    int bRow = j * k;
+                    float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                    for (int p = 0; p < k; p++) {
+                        float w = b[bRow + p];
+                        s0 += a[a0 + p] * w;
+                        s1 += a[a1 + p] * w;
+                        s2 += a[a2 + p] * w;
+                        s3 += a[a3 + p] * w;
+                    }
+                    c[r * n + j] = bias[j] + s0;
+                    c[(r + 1) * n + j] = bias[j] + s1;
+                    c[(r + 2) * n + j] = bias[j] + s2;
+                    c[(r + 3) * n + j] = bias[j] + s3;
+                }
+            }
+            for (; r < m; r++) {
+                int aRow = r * k;
+                int cRow = r * n;
+                for (int j = j0; j < j1; j++) {
+                    c[cRow + j] = bias[j] + scalarDot(a, aRow, b, j * k, k);
+                }
+            }
+        }
+    }
+
+    // c[m x n] = a[m x k] * b[k x n]
+    // Backward pass: a holds the deltas of a batch, b is the weight matrix.
+    static void gemmNN(float[] a, float[] b, float[] c, int m, int n, int k) {
+        for (int i = 0; i < m * n; i++) {
+            c[i] = 0;
+        }
+        for (int p0 = 0; p0 < k; p0 += BLOCK) {
+            int p1 = Math.min(p0 + BLOCK, k);
+            for (int r = 0; r < m; r++) {
+                int aRow = r * k;
+                int cRow = r * n;
+                for (int p = p0; p < p1; p++) {
+                    float alpha = a[aRow + p];
+                    if (alpha != 0) {
+                        axpy(alpha, b, p * n, c, cRow, n);
+                    }
+                }
+            }
+        }
+    }
+
+    // c[m x n] += a[k x m]^T * b[k x n]
+    // Weight gradients: a holds the deltas of a batch, b its inputs.
+    static void gemmTNAccumulate(float[] a, float[] b, float[] c, int m, int n, int k) {
+        for (int i0 = 0; i0 < m; i0 += BLOCK) {
+            int i1 = Math.min(i0 + BLOCK, m);
+            for (int s = 0; s < k; s++) {
+                int aRow = s * m;
+                int bRow = s * n;
+                for (int i = i0; i < i1; i++) {
+                    float alpha = a[aRow + i];
+                    if (alpha != 0) {
+                        axpy(alpha, b, bRow, c, i * n, n);
+                    }
+                }
+            }
+        }
+    }
+
+    // c[m x n] = a[m x k] * b[n x k]^T + bias[n], with a given as sparse rows.
+    // Same blocking as gemmNT, but each dot product only visits a's nonzeros.
+    static void spmmNT(SparseInput a, float[] b, float[] bias, float[] c, int m, int n, int k) {
+        int[] starts = a.starts;
+        int[] indices = a.indices;
+        float[] values = a.values;
+        for (int j0 = 0; j0 < n; j0 += BLOCK) {
+            int j1 = Math.min(j0 + BLOCK, n);
+            for (int r = 0; r < m; r++) {
+                int from = starts[r];
+                int to = starts[r + 1];
+                int cRow = r * n;
+                for (int j = j0; j < j1; j++) {
+                    int bRow = j * k;
+                    float s0 = 0, s1 = 0;
+                    int t = from;
+                    for (; t + 2 <= to; t += 2) {
+                        s0 += values[t] * b[bRow + indices[t]];
+                        s1 += values[t + 1] * b[bRow + indices[t + 1]];
+                    }
+                    if (t < to) {
+                        s0 += values[t] * b[bRow + indices[t]];
+                    }
+                    c[cRow + j] = bias[j] + (s0 + s1);
+                }
+            }
+        }
+    }
+
+    // c[m x n] += a[k x m]^T * b[k x n], with b given as sparse rows.
+    // Weight gradients of the first layer: only columns of nonzero inputs change.
+    static void spGemmTNAccumulate(float[] a, SparseInput b, float[] c, int m, int n, int k) {
+        int[] starts = b.starts;
+        int[] indices = b.indices;
+        float[] values = b.values;
+        for (int i0 = 0; i0 < m; i0 += BLOCK) {
+            int i1 = Math.min(i0 + BLOCK, m);
+            for (int s = 0; s < k; s++) {
+                int aRow = s * m;
+                int from = starts[s];
+                int to = starts[s + 1];
+                for (int i = i0; i < i1; i++) {
+                    float alpha = a[aRow + i];
+                    if (alpha != 0) {
+                        int cRow = i * n;
+                        for (int t = from; t < to; t++) {
+                            c[cRow + indices[t]] += alpha * values[t];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // y[i] = bias[i] + sum of values[t] * x[columns[t]] over row i's entries
+    // t in [starts[i], starts[i + 1]): a matrix-vector product with a pruned
+    // weight matrix stored as compressed sparse rows. Two partial sums, as in spmmNT.
+    static void csrMatVec(int[] starts, int[] columns, float[] values, float[] x, float[] bias, float[] y, int rows) {
+        for (int i = 0; i < rows; i++) {
+            int to = starts[i + 1];
+            float s0 = 0, s1 = 0;
+            int t = starts[i];
+            for (; t + 2 <= to; t += 2) {
+                s0 += values[t] * x[columns[t]];
+                s1 += values[t + 1] * x[columns[t + 1]];
+            }
+            if (t < to) {
+                s0 += values[t] * x[columns[t]];
+            }
+            y[i] = bias[i] + (s0 + s1);
+        }
+    }
+
+    // Softmax of x[xOff .. xOff + n) into out[outOff ..] (which may overlap x exactly).
+    // The largest value is subtracted before exponentiating, so no term exceeds 1 and
+    // nothing overflows. Returns log(sum(exp(x))), so log-probabilities are x[i] minus it.
+    static float softmax(float[] x, int xOff, float[] out, int outOff, int n) {
+        float max = x[xOff];
+        for (int i = 1; i < n; i++) {
+            max = Math.max(max, x[xOff + i]);
+        }
+        float sum = 0;
+        for (int i = 0; i < n; i++) {
+            float e = (float) Math.exp(x[xOff + i] - max);
+            out[outOff + i] = e;
+            sum += e;
+        }
+        float inverse = 1f / sum;
+        for (int i = 0; i < n; i++) {
+            out[outOff + i] *= inverse;
+        }
+        return max + (float) Math.log(sum);
+    }
+}
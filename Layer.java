@@ -1,50 +1,242 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Simple layer application. Usually the "hidden layer".
- * 
+ *
+ * Weights are stored as one contiguous row-major matrix: row i holds the
+ * weights of neuron i, so weights[i * numInputs + w] connects input w to
+ * neuron i. Biases live in their own vector.
+ *
  * @author Bashar
- * @version 1.1
+ * @version 1.2
  */
 public class Layer implements Serializable {
-    private Neuron[] neurons;
-    private float[] lastOutputs; // Store the output of this layer
+    private static final long serialVersionUID = 8246575030275494673L;
+
+    private int numInputs;
+    private int numNeurons;
+    private float[] weights; // numNeurons x numInputs, row-major
+    private float[] biases;
+
+    private transient Neuron[] neurons;    // Views onto the rows above
+    private transient float[] lastOutputs; // Store the output of this layer
 
     public Layer(int numInputs, int numNeurons) {
-        this.neurons = new Neuron[numNeurons];
+        this.numInputs = numInputs;
+        this.numNeurons = numNeurons;
+        this.weights = new float[numNeurons * numInputs];
+        this.biases = new float[numNeurons];
+
+        // Xavier/Glorot initialization, same limit Neuron uses.
+        float limit = (float) Math.sqrt(6.0 / (numInputs + 1));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         for (int i = 0; i < numNeurons; i++) {
-            neurons[i] = new Neuron(numInputs);
+            int row = i * numInputs;
+            for (int w = 0; w < numInputs; w++) {
+                weights[row + w] = random.nextFloat() * 2 * limit - limit;
+            }
+            biases[i] = random.nextFloat() * 2 * limit - limit;
         }
     }
-    
-    // Process data and store the outputs.
-    public float[] compute(float[] arr) {
-        lastOutputs = new float[neurons.length];
-        for (int i = 0; i < neurons.length; i++) {
-            lastOutputs[i] = neurons[i].compute(arr);
+
+    // Wraps existing weight (numNeurons x numInputs, row-major) and bias arrays.
+    Layer(int numInputs, int numNeurons, float[] weights, float[] biases) {
+        if (weights.length != numNeurons * numInputs || biases.length != numNeurons) {
+            throw new IllegalArgumentException("Weight and bias sizes must match the layer shape!");
+        }
+        this.numInputs = numInputs;
+        this.numNeurons = numNeurons;
+        this.weights = weights;
+        this.biases = biases;
+    }
+
+    // Independent copy of the weights and biases, for checkpoints.
+    Layer copy() {
+        return new Layer(numInputs, numNeurons, weights.clone(), biases.clone());
+    }
+
+    // Overwrites this layer's weights and biases with other's (same shape).
+    void copyFrom(Layer other) {
+        if (other.numInputs != numInputs || other.numNeurons != numNeurons) {
+            throw new IllegalArgumentException("Layer shapes differ!");
         }
+        System.arraycopy(other.weights, 0, weights, 0, weights.length);
+        System.arraycopy(other.biases, 0, biases, 0, biases.length);
+    }
+
+    // Process data with ReLU activation and store the outputs.
+    public float[] compute(float[] arr) {
+        lastOutputs = new float[numNeurons];
+        forward(arr, lastOutputs, true);
         return lastOutputs;
     }
-    
+
     public float[] computeRaw(float[] arr) {
-        float[] result = new float[neurons.length];
-        for (int i = 0; i < neurons.length; i++) {
-            result[i] = neurons[i].computeRaw(arr);
-        }
+        float[] result = new float[numNeurons];
+        forward(arr, result, false);
         return result;
     }
 
-    
+    // out = W * arr + b, optionally followed by ReLU.
+    void forward(float[] arr, float[] out, boolean relu) {
+        if (arr.length != numInputs) {
+            throw new IllegalArgumentException("Input size must match weight size!");
+        }
+        for (int i = 0; i < numNeurons; i++) {
+            float sum = biases[i] + Kernels.dot(arr, 0, weights, i * numInputs, numInputs); // the magic.
+            out[i] = relu ? Math.max(0, sum) : sum;
+        }
+    }
+
+    // Batched forward: out[rows x numNeurons] = in[rows x numInputs] * W^T + b.
+    void forwardBatch(float[] in, float[] out, int rows, boolean relu) {
+        Kernels.gemmNT(in, weights, biases, out, rows, numNeurons, numInputs);
+        if (relu) {
+            relu(out, rows * numNeurons);
+        }
+    }
+
+    // Batched forward that indexes the nonzeros of in first and, when they are
+    // sparse enough, multiplies only those. Returns true if the sparse kernel ran,
+    // in which case sparse still describes in for accumulateGradients.
+    boolean forwardBatchSparse(float[] in, SparseInput sparse, float[] out, int rows, boolean relu) {
+        if (sparse.compress(in, rows, numInputs) > SparseInput.DENSITY_THRESHOLD) {
+            forwardBatch(in, out, rows, relu);
+            return false;
+        }
+        Kernels.spmmNT(sparse, weights, biases, out, rows, numNeurons, numInputs);
+        if (relu) {
+            relu(out, rows * numNeurons);
+        }
+        return true;
+    }
+
+    private static void relu(float[] values, int n) {
+        for (int i = 0; i < n; i++) {
+            if (values[i] < 0) {
+                values[i] = 0;
+            }
+        }
+    }
+
+    // Batched backward: errors[rows x numInputs] = delta[rows x numNeurons] * W.
+    // Walks W row by row (transposed product without a transposed copy),
+    // so every access is sequential instead of striding down a column.
+    void backpropagateBatch(float[] delta, float[] errors, int rows) {
+        Kernels.gemmNN(delta, weights, errors, rows, numInputs, numNeurons);
+    }
+
+    // Adds this batch's weight and bias gradients (summed over rows) to the given buffers.
+    void accumulateGradients(float[] in, float[] delta, int rows, float[] gradWeights, float[] gradBiases) {
+        Kernels.gemmTNAccumulate(delta, in, gradWeights, numNeurons, numInputs, rows);
+        for (int r = 0; r < rows; r++) {
+            Kernels.axpy(1f, delta, r * numNeurons, gradBiases, 0, numNeurons);
+        }
+    }
+
+    // Same, for inputs given as sparse rows: only columns of nonzero inputs are touched.
+    void accumulateGradients(SparseInput in, float[] delta, int rows, float[] gradWeights, float[] gradBiases) {
+        Kernels.spGemmTNAccumulate(delta, in, gradWeights, numNeurons, numInputs, rows);
+        for (int r = 0; r < rows; r++) {
+            Kernels.axpy(1f, delta, r * numNeurons, gradBiases, 0, numNeurons);
+        }
+    }
+
+    // W -= clip(scale * gradWeights), b -= clip(scale * gradBiases).
+    void applyGradients(float[] gradWeights, float[] gradBiases, float scale, float clipThreshold) {
+        Kernels.clippedUpdate(weights, gradWeights, scale, clipThreshold, weights.length);
+        Kernels.clippedUpdate(biases, gradBiases, scale, clipThreshold, numNeurons);
+    }
+
+    // Single-sample SGD step applied straight to the weights, skipping zero
+    // inputs and dead neurons. Unsynchronized on purpose: used by Hogwild
+    // training, where threads race on the shared matrix.
+    void applySampleUpdate(float[] input, float[] delta, float learningRate, float clipThreshold) {
+        for (int i = 0; i < numNeurons; i++) {
+            float scaled = learningRate * delta[i];
+            if (scaled == 0) continue;
+            int row = i * numInputs;
+            for (int w = 0; w < numInputs; w++) {
+                float x = input[w];
+                if (x != 0) {
+                    weights[row + w] -= clip(scaled * x, clipThreshold);
+                }
+            }
+            biases[i] -= clip(scaled, clipThreshold);
+        }
+    }
+
+    static float clip(float grad, float clipThreshold) {
+        if (grad > clipThreshold) {
+            return clipThreshold;
+        } else if (grad < -clipThreshold) {
+            return -clipThreshold;
+        }
+        return grad;
+    }
+
+
     public int neuronCount() {
-        return neurons.length;
+        return numNeurons;
     }
-  
+
+    public int inputCount() {
+        return numInputs;
+    }
+
+    // Direct access to the row-major weight matrix (not a copy).
+    public float[] getWeights() {
+        return weights;
+    }
+
+    public float[] getBiases() {
+        return biases;
+    }
+
+    // Per-neuron views, kept for code written against the old Neuron[] layout.
     public Neuron[] getNeurons() {
+        if (neurons == null) {
+            Neuron[] views = new Neuron[numNeurons];
+            for (int i = 0; i < numNeurons; i++) {
+                views[i] = new Neuron(weights, i * numInputs, numInputs, biases, i);
+            }
+            neurons = views;
+        }
         return neurons;
     }
-    
+
     // Optionally, expose last outputs
     public float[] getLastOutputs() {
         return lastOutputs;
     }
+
+    // Reads both the flat layout and the old one-Neuron-per-row layout,
+    // so existing trained_brain.ser files keep loading.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        weights = (float[]) fields.get("weights", null);
+        if (weights != null) {
+            numInputs = fields.get("numInputs", 0);
+            numNeurons = fields.get("numNeurons", 0);
+            biases = (float[]) fields.get("biases", null);
+            return;
+        }
+        Neuron[] legacy = (Neuron[]) fields.get("neurons", null);
+        if (legacy == null || legacy.length == 0) {
+            throw new IOException("Layer has no weights");
+        }
+        numNeurons = legacy.length;
+        numInputs = legacy[0].inputCount();
+        weights = new float[numNeurons * numInputs];
+        biases = new float[numNeurons];
+        for (int i = 0; i < numNeurons; i++) {
+            for (int w = 0; w < numInputs; w++) {
+                weights[i * numInputs + w] = legacy[i].getWeight(w);
+            }
+            biases[i] = legacy[i].getBias();
+        }
+    }
 }
@@ -0,0 +1,193 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for InferenceServer.
+ *
+ * Sends raw 784-byte images from the t10k IDX files (or random MNIST-like
+ * images when they are missing, or image.png with --png) from a number of
+ * concurrent clients, then prints client-side throughput and latency, the
+ * accuracy when labels are known, and the server's own /metrics.
+ *
+ * With --embedded the server is started in this JVM on a free port, so one
+ * command tests the whole path on localhost.
+ *
+ * Usage: java LoadGenerator [--url http://localhost:8080] [--requests 20000]
+ *                           [--concurrency 64] [--png] [--embedded]
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class LoadGenerator {
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int total = 20000;
+        int concurrency = 64;
+        boolean png = false;
+        boolean embedded = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--requests":
+                    total = Integer.parseInt(args[++i]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--png":
+                    png = true;
+                    break;
+                case "--embedded":
+                    embedded = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        // Request bodies, with their labels when known (-1 otherwise)
+        List<byte[]> bodies = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        File idxImages = new File("t10k-images-idx3-ubyte");
+        File idxLabels = new File("t10k-labels-idx1-ubyte");
+        if (png) {
+            bodies.add(Files.readAllBytes(new File("image.png").toPath()));
+            labels.add(-1);
+        } else if (idxImages.exists() && idxLabels.exists()) {
+            IdxDataset dataset = IdxDataset.open(idxImages.toPath(), idxLabels.toPath());
+            for (int i = 0; i < dataset.size(); i++) {
+                byte[] body = new byte[dataset.pixelCount()];
+                dataset.pixels(i).get(body);
+                bodies.add(body);
+                labels.add(dataset.label(i));
+            }
+        } else {
+            Random random = new Random(42);
+            for (int i = 0; i < 1000; i++) {
+                byte[] body = new byte[Guess.INPUT_SIZE];
+                for (int p = 0; p < body.length; p++) {
+                    body[p] = (byte) (random.nextFloat() < 0.2f ? random.nextInt(256) : 0);
+                }
+                bodies.add(body);
+                labels.add(-1);
+            }
+        }
+
+        InferenceServer server = null;
+        if (embedded) {
+            // Same JVM-wide TCP_NODELAY setting InferenceServer.main makes
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            server = new InferenceServer(ModelFile.load(ModelFile.defaultFile()), 0, Brain.INFERENCE_BATCH, 2000);
+            server.start();
+            url = "http://localhost:" + server.port();
+        }
+        try {
+            run(url, bodies, labels, total, concurrency);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    static void run(String url, List<byte[]> bodies, List<Integer> labels, int total, int concurrency)
+            throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        URI predict = URI.create(url + "/predict");
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong labelled = new AtomicLong();
+        AtomicLong correct = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        List<Callable<Void>> clients = new ArrayList<>();
+        for (int c = 0; c < concurrency; c++) {
+            clients.add(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < total) {
+                    int sample = i % bodies.size();
+                    HttpRequest request = HttpRequest.newBuilder(predict)
+                                                     .POST(HttpRequest.BodyPublishers.ofByteArray(bodies.get(sample)))
+                                                     .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        latency.record(System.nanoTime() - start);
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        int label = labels.get(sample);
+                        if (label >= 0) {
+                            labelled.incrementAndGet();
+                            if (parseLabel(response.body()) == label) {
+                                correct.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        try {
+            for (Future<Void> result : pool.invokeAll(clients)) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Client failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d requests, %d clients, %.2f s: %.0f requests/s, %d errors%n",
+                          total, concurrency, seconds, total / seconds, errors.get());
+        System.out.printf("Client latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                          latency.percentileMicros(0.50) / 1e3, latency.percentileMicros(0.99) / 1e3,
+                          latency.maxMicros() / 1e3);
+        if (labelled.get() > 0) {
+            System.out.printf("Accuracy: %.2f%%%n", 100.0 * correct.get() / labelled.get());
+        }
+        HttpRequest metrics = HttpRequest.newBuilder(URI.create(url + "/metrics")).GET().build();
+        System.out.println("Server metrics:");
+        System.out.print(client.send(metrics, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    // The "label" field of a prediction reply.
+    static int parseLabel(String json) {
+        int at = json.indexOf("\"label\":");
+        if (at < 0) {
+            return -1;
+        }
+        int start = at + "\"label\":".length();
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(json.substring(start, end));
+    }
+}
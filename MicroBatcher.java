@@ -0,0 +1,168 @@
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent single-image requests into batched forward passes.
+ *
+ * A dispatcher thread takes the first waiting request, then keeps
+ * collecting until it has maxBatch requests or the window since the first
+ * one has passed, and scores them all with one Brain.forwardBatch call.
+ * Under light load a request waits at most the window; under heavy load
+ * batches fill up immediately and the matrix kernels do the work.
+ *
+ * Once stopped (or if the dispatcher has died) submit fails straight away
+ * with a RejectedExecutionException instead of queueing a request that
+ * nothing will answer.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+class MicroBatcher implements Runnable {
+    private static final class Request {
+        final float[] input;
+        final CompletableFuture<Prediction> result = new CompletableFuture<>();
+
+        Request(float[] input) {
+            this.input = input;
+        }
+    }
+
+    private final ModelRegistry registry;
+    private final int maxBatch;
+    private final long windowNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedRequests = new AtomicLong();
+    private volatile Thread dispatcher;
+    private volatile boolean stopped; // Set by stop, or by the dispatcher as it exits
+
+    MicroBatcher(ModelRegistry registry, int maxBatch, long windowNanos) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1!");
+        }
+        this.registry = registry;
+        this.maxBatch = maxBatch;
+        this.windowNanos = windowNanos;
+    }
+
+    void start() {
+        if (stopped) {
+            throw new IllegalStateException("Batcher was stopped");
+        }
+        Thread thread = new Thread(this, "micro-batcher");
+        thread.setDaemon(true);
+        dispatcher = thread;
+        thread.start();
+    }
+
+    // Fails every queued request and any later submit; a stopped batcher can't be restarted.
+    void stop() {
+        stopped = true;
+        Thread thread = dispatcher;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    // Queues one input; the future completes when its batch has been scored.
+    CompletableFuture<Prediction> submit(float[] input) {
+        if (input.length != registry.current().brain().getLayers()[0].inputCount()) {
+            throw new IllegalArgumentException("Input size must match weight size!");
+        }
+        Request request = new Request(input);
+        if (stopped || dispatcher == null) {
+            request.result.completeExceptionally(new RejectedExecutionException("Server stopped"));
+            return request.result;
+        }
+        queue.add(request);
+        // The dispatcher sets stopped before its final drain, so if it has drained
+        // already this sees the flag; otherwise the drain fails the request.
+        if (stopped && queue.remove(request)) {
+            request.result.completeExceptionally(new RejectedExecutionException("Server stopped"));
+        }
+        return request.result;
+    }
+
+    long batchCount() {
+        return batches.get();
+    }
+
+    long batchedRequestCount() {
+        return batchedRequests.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            dispatch();
+        } finally {
+            // However the loop ended, nothing will answer what is still queued.
+            stopped = true;
+            Request request;
+            while ((request = queue.poll()) != null) {
+                request.result.completeExceptionally(new RejectedExecutionException("Server stopped"));
+            }
+        }
+    }
+
+    // Scores batches until stopped.
+    private void dispatch() {
+        Request[] batch = new Request[maxBatch];
+        float[][] inputs = new float[maxBatch][];
+        ModelRegistry.Model model = null;
+        InferenceContext context = null;
+        while (!stopped) {
+            int n = 0;
+            try {
+                Request first = queue.take();
+                batch[n++] = first;
+                long deadline = System.nanoTime() + windowNanos;
+                while (n < maxBatch) {
+                    Request next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch[n++] = next;
+                }
+            } catch (InterruptedException e) {
+                // Stopped: fail whatever was collected; run fails the rest of the queue.
+                for (int i = 0; i < n; i++) {
+                    batch[i].result.completeExceptionally(new RejectedExecutionException("Server stopped"));
+                }
+                return;
+            }
+
+            try {
+                // The whole batch runs on one version; a swap takes effect from the next batch
+                if (registry.current() != model) {
+                    model = registry.current();
+                    context = new InferenceContext(model.brain().getLayers(), maxBatch);
+                }
+                Layer[] layers = model.brain().getLayers();
+                int classes = layers[layers.length - 1].neuronCount();
+                float[] logits = context.activations[layers.length - 1];
+                for (int i = 0; i < n; i++) {
+                    inputs[i] = batch[i].input;
+                }
+                model.brain().forwardBatch(inputs, 0, n, context);
+                for (int i = 0; i < n; i++) {
+                    float[] row = new float[classes];
+                    System.arraycopy(logits, i * classes, row, 0, classes);
+                    batch[i].result.complete(new Prediction(row, model.version()));
+                }
+            } catch (RuntimeException e) {
+                for (int i = 0; i < n; i++) {
+                    batch[i].result.completeExceptionally(e);
+                }
+            }
+            batches.incrementAndGet();
+            batchedRequests.addAndGet(n);
+            for (int i = 0; i < n; i++) {
+                batch[i] = null;
+                inputs[i] = null;
+            }
+        }
+    }
+}
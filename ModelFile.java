@@ -0,0 +1,190 @@
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary model format, replacing Java serialization of Brain.
+ *
+ * Layout (all little-endian):
+ *   int magic ("MNNB"), int version,
+ *   int layerCount, int sizes[layerCount + 1]  (input size, then each layer's width),
+ *   per layer: float weights[width * inputs] (row-major), float biases[width],
+ *   int crc32 of everything before it.
+ *
+ * Loading maps the file and bulk-copies each block, so it costs one pass
+ * over the bytes. Old .ser files can be loaded directly or converted with
+ * "java ModelFile trained_brain.ser trained_brain.bin". Deserialization
+ * only accepts the Brain, Layer and Neuron classes; loadBinary never
+ * deserializes at all, for files from places that aren't trusted.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class ModelFile {
+    static final int MAGIC = 0x424E4E4D; // "MNNB" read as a little-endian int
+    static final int VERSION = 1;
+    static final int SERIAL_MAGIC = 0xACED; // Java serialization stream header
+    static final String DEFAULT_FILE = "trained_brain.bin";
+    static final String LEGACY_FILE = "trained_brain.ser";
+    // What an old .ser file may contain: the network classes and their float arrays.
+    static final ObjectInputFilter SERIAL_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=10;Brain;Layer;Neuron;!*");
+
+    private ModelFile() {
+    }
+
+    // trained_brain.bin if present, otherwise the old trained_brain.ser.
+    public static File defaultFile() {
+        File file = new File(DEFAULT_FILE);
+        return file.exists() ? file : new File(LEGACY_FILE);
+    }
+
+    // Writes brain to file through a temp file and an atomic rename.
+    public static void save(Brain brain, File file) throws IOException {
+        writeAtomically(encode(brain), file);
+    }
+
+    // The complete file contents for brain, ready to write.
+    static ByteBuffer encode(Brain brain) {
+        Layer[] layers = brain.getLayers();
+        long size = 4 + 4 + 4 + 4L * (layers.length + 1) + 4;
+        for (Layer layer : layers) {
+            size += 4L * (layer.getWeights().length + layer.getBiases().length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(layers.length);
+        buffer.putInt(layers[0].inputCount());
+        for (Layer layer : layers) {
+            buffer.putInt(layer.neuronCount());
+        }
+        for (Layer layer : layers) {
+            buffer.asFloatBuffer().put(layer.getWeights());
+            buffer.position(buffer.position() + 4 * layer.getWeights().length);
+            buffer.asFloatBuffer().put(layer.getBiases());
+            buffer.position(buffer.position() + 4 * layer.getBiases().length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    // Writes buffer to a temp file next to file, forces it to disk, then renames it over file.
+    static void writeAtomically(ByteBuffer buffer, File file) throws IOException {
+        File temp = new File(file.getAbsolutePath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Loads a model in either this format or the old Java-serialized one.
+    public static Brain load(File file) throws IOException {
+        if (isSerialized(file)) {
+            return importSer(file);
+        }
+        return loadBinary(file);
+    }
+
+    // Loads a model in this format only; anything else, including a .ser file, is rejected.
+    public static Brain loadBinary(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, file.toString());
+        }
+    }
+
+    // Parses a model from buffer, checking structure and checksum.
+    static Brain read(ByteBuffer buffer, String name) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a model file: " + name);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model version " + version + " in " + name);
+        }
+        int layerCount = buffer.getInt();
+        if (layerCount < 1 || buffer.remaining() < 4L * (layerCount + 1)) {
+            throw new IOException("Corrupt model header in " + name);
+        }
+        int[] sizes = new int[layerCount + 1];
+        long expected = 0;
+        for (int i = 0; i <= layerCount; i++) {
+            sizes[i] = buffer.getInt();
+            if (sizes[i] < 1) {
+                throw new IOException("Corrupt model header in " + name);
+            }
+            if (i > 0) {
+                expected += 4L * sizes[i] * (sizes[i - 1] + 1);
+            }
+        }
+        if (buffer.remaining() != expected + 4) {
+            throw new IOException("Model file has wrong length: " + name);
+        }
+        Layer[] layers = new Layer[layerCount];
+        for (int l = 0; l < layerCount; l++) {
+            float[] weights = new float[sizes[l + 1] * sizes[l]];
+            float[] biases = new float[sizes[l + 1]];
+            buffer.asFloatBuffer().get(weights);
+            buffer.position(buffer.position() + 4 * weights.length);
+            buffer.asFloatBuffer().get(biases);
+            buffer.position(buffer.position() + 4 * biases.length);
+            layers[l] = new Layer(sizes[l], sizes[l + 1], weights, biases);
+        }
+        int end = buffer.position();
+        int stored = buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(end));
+        if ((int) crc.getValue() != stored) {
+            throw new IOException("Checksum mismatch in " + name);
+        }
+        return new Brain(layers);
+    }
+
+    static boolean isSerialized(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 2 && in.readUnsignedShort() == SERIAL_MAGIC;
+        }
+    }
+
+    // Reads an old trained_brain.ser file.
+    public static Brain importSer(File file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            ois.setObjectInputFilter(SERIAL_FILTER);
+            return (Brain) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Not a serialized Brain: " + file, e);
+        }
+    }
+
+    // Converts a model file (for example an old .ser) into this format.
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java ModelFile <input model> <output .bin>");
+            return;
+        }
+        long start = System.nanoTime();
+        Brain brain = load(new File(args[0]));
+        long loaded = System.nanoTime();
+        save(brain, new File(args[1]));
+        System.out.printf("Loaded %s in %.1f ms, wrote %s%n", args[0], (loaded - start) / 1e6, args[1]);
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The model a long-running process serves, replaced without a restart
+ * when a new version is written to disk.
+ *
+ * A background thread watches the model directory. When a model file is
+ * created or changed it waits for writes to settle, then loads the file
+ * (when watching a directory: the newest model file, if it was among the
+ * changed ones, so touching an older file never rolls the model back),
+ * checks it (readable and intact, same input and output size as the live
+ * model, finite weights, and optionally a minimum accuracy on a probe set)
+ * and, if it passes, makes it the live model with a single volatile write.
+ * A rejected file is reported and the live model stays.
+ *
+ * Only the checksummed binary format (.bin) is accepted. Files dropped
+ * into a watched directory are never Java-deserialized; convert an old
+ * .ser model with "java ModelFile model.ser model.bin" first.
+ *
+ * Readers take current() once per request and use that Model to the end,
+ * so a request that started on the old version finishes on it, and the
+ * read path takes no locks. Each Model has a version string (file name and
+ * load number, e.g. "trained_brain.bin#2") that predictions carry.
+ *
+ *   ModelRegistry registry = ModelRegistry.watch(new File("models"));
+ *   Prediction p = registry.current().predict(input); // p.model() says which version
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class ModelRegistry implements Closeable {
+    static final long SETTLE_MILLIS = 200; // Quiet time after the last change before loading
+
+    // One loaded model version. Immutable, so it can be shared freely.
+    public static final class Model {
+        private final Brain brain;
+        private final String version;
+        private final File file;
+        private final long loadedAt;
+
+        Model(Brain brain, String version, File file) {
+            this.brain = brain;
+            this.version = version;
+            this.file = file;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        public Brain brain() {
+            return brain;
+        }
+
+        public String version() {
+            return version;
+        }
+
+        // The file it was loaded from, or null if it was handed over in memory.
+        public File file() {
+            return file;
+        }
+
+        public long loadedAt() {
+            return loadedAt;
+        }
+
+        // One forward pass, tagged with this version.
+        public Prediction predict(float[] input) {
+            return new Prediction(brain.forward(input), version);
+        }
+
+        @Override
+        public String toString() {
+            return version;
+        }
+    }
+
+    private final Path directory;      // Null if not watching
+    private final String fileName;     // Only this file, or null for any model file in the directory
+    private final WatchService watcher;
+    private final Thread thread;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong swaps = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private volatile Model live;
+    private volatile String lastRejection;
+    private volatile float[][] probeInputs;
+    private volatile int[] probeLabels;
+    private volatile double minAccuracy;
+
+    private ModelRegistry(Path directory, String fileName, Model initial) throws IOException {
+        this.directory = directory;
+        this.fileName = fileName;
+        this.live = initial;
+        if (directory != null) {
+            watcher = FileSystems.getDefault().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            thread = new Thread(this::watchDirectory, "model-registry");
+            thread.setDaemon(true);
+        } else {
+            watcher = null;
+            thread = null;
+        }
+    }
+
+    // Serves the newest .bin model file in directory, and any newer one written there later.
+    public static ModelRegistry watch(File directory) throws IOException {
+        File newest = newest(directory);
+        if (newest == null) {
+            throw new IOException("No .bin model files in " + directory);
+        }
+        return new ModelRegistry(directory.toPath(), null, null).start(newest.toPath());
+    }
+
+    // Serves file (a .bin model), reloading it whenever it is replaced or rewritten.
+    public static ModelRegistry watchFile(File file) throws IOException {
+        if (!isModelFile(file.getName())) {
+            throw new IOException("Only .bin models can be served; convert " + file + " with java ModelFile");
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        return new ModelRegistry(parent.toPath(), file.getName(), null).start(file.toPath());
+    }
+
+    // Loads the first version, then starts watching. Changes made meanwhile are
+    // already queued in the watch service.
+    private ModelRegistry start(Path first) throws IOException {
+        try {
+            live = load(first);
+        } catch (IOException | RuntimeException e) {
+            watcher.close();
+            throw e;
+        }
+        thread.start();
+        return this;
+    }
+
+    // Serves brain and never changes.
+    public static ModelRegistry of(Brain brain, String version) {
+        try {
+            return new ModelRegistry(null, null, new Model(brain, version, null));
+        } catch (IOException e) {
+            throw new AssertionError(e); // Nothing to watch, so nothing to fail
+        }
+    }
+
+    // The live model. Take it once per request and use it throughout.
+    public Model current() {
+        return live;
+    }
+
+    // From now on a new version must also reach minAccuracy on these inputs to go live.
+    public void setProbe(float[][] inputs, int[] labels, double minAccuracy) {
+        if (inputs.length != labels.length) {
+            throw new IllegalArgumentException("Inputs and labels differ in length!");
+        }
+        this.probeInputs = inputs;
+        this.probeLabels = labels;
+        this.minAccuracy = minAccuracy;
+    }
+
+    // Versions loaded, versions that went live after the first, and files rejected.
+    public long loadCount() {
+        return loads.get();
+    }
+
+    public long swapCount() {
+        return swaps.get();
+    }
+
+    public long rejectionCount() {
+        return rejections.get();
+    }
+
+    // Why the last file was rejected, or null if none has been.
+    public String lastRejection() {
+        return lastRejection;
+    }
+
+    // Stops watching. The live model stays usable.
+    @Override
+    public void close() throws IOException {
+        if (thread != null) {
+            thread.interrupt();
+            watcher.close();
+        }
+    }
+
+    private void watchDirectory() {
+        try {
+            while (true) {
+                // Collect changes until the directory has been quiet for a moment, so a
+                // file being copied in is read once, after its last write.
+                WatchKey key = watcher.take();
+                Set<Path> changed = new HashSet<>();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                        Path name = (Path) event.context();
+                        if (fileName != null ? name.toString().equals(fileName) : isModelFile(name.toString())) {
+                            changed.add(directory.resolve(name));
+                        }
+                    }
+                    key.reset();
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (changed.isEmpty()) continue;
+                if (fileName != null) {
+                    reload(directory.resolve(fileName));
+                    continue;
+                }
+                // Directory: follow the newest file, and only if it is one that changed
+                File newest = newest(directory.toFile());
+                if (newest != null && changed.contains(newest.toPath())) {
+                    reload(newest.toPath());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed.
+        }
+    }
+
+    // Loads and checks path, and makes it live if it passes.
+    private void reload(Path path) {
+        Model candidate;
+        try {
+            candidate = load(path);
+        } catch (IOException | RuntimeException e) {
+            rejections.incrementAndGet();
+            lastRejection = path.getFileName() + ": " + e.getMessage();
+            System.err.println("Rejected model " + lastRejection);
+            return;
+        }
+        Model previous = live;
+        live = candidate;
+        swaps.incrementAndGet();
+        System.out.println("Now serving model " + candidate + " (was " + previous + ")");
+    }
+
+    private Model load(Path path) throws IOException {
+        Brain brain = ModelFile.loadBinary(path.toFile());
+        validate(brain);
+        String version = path.getFileName() + "#" + loads.incrementAndGet();
+        return new Model(brain, version, path.toFile());
+    }
+
+    // Throws if brain must not replace the live model.
+    private void validate(Brain brain) throws IOException {
+        Layer[] layers = brain.getLayers();
+        Model current = live;
+        if (current != null) {
+            Layer[] liveLayers = current.brain.getLayers();
+            if (layers[0].inputCount() != liveLayers[0].inputCount()
+                    || layers[layers.length - 1].neuronCount() != liveLayers[liveLayers.length - 1].neuronCount()) {
+                throw new IOException("Model takes " + layers[0].inputCount() + " inputs to "
+                                      + layers[layers.length - 1].neuronCount() + " classes, live one "
+                                      + liveLayers[0].inputCount() + " to "
+                                      + liveLayers[liveLayers.length - 1].neuronCount());
+            }
+        }
+        for (int l = 0; l < layers.length; l++) {
+            if (!isFinite(layers[l].getWeights()) || !isFinite(layers[l].getBiases())) {
+                throw new IOException("Layer " + l + " has NaN or infinite weights");
+            }
+        }
+        float[][] inputs = probeInputs;
+        int[] labels = probeLabels;
+        if (inputs != null) {
+            double accuracy = Evaluation.evaluate(brain, inputs, labels, null).accuracy();
+            if (accuracy < minAccuracy) {
+                throw new IOException(String.format("Probe accuracy %.2f%% is below %.2f%%", accuracy * 100,
+                                                    minAccuracy * 100));
+            }
+        }
+    }
+
+    private static boolean isFinite(float[] values) {
+        for (float v : values) {
+            if (!Float.isFinite(v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The model file in directory with the latest modification time, or null if there is none.
+    private static File newest(File directory) {
+        File newest = null;
+        File[] files = directory.listFiles(file -> file.isFile() && isModelFile(file.getName()));
+        if (files != null) {
+            for (File file : files) {
+                if (newest == null || file.lastModified() > newest.lastModified()) {
+                    newest = file;
+                }
+            }
+        }
+        return newest;
+    }
+
+    private static boolean isModelFile(String name) {
+        return name.endsWith(".bin");
+    }
+}
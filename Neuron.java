@@ -1,62 +1,69 @@
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 /**
  * Simple neuron application.
- * 
+ *
+ * A neuron is a view onto one row of its Layer's weight matrix and one
+ * entry of its bias vector. A neuron built on its own gets private storage.
+ *
  * @author Bashar Zain
- * @version 1.0
+ * @version 1.1
  */
 public class Neuron implements Serializable {
-    private float[] weights;
-    private float bias;
+    private static final long serialVersionUID = -3482489213012027176L;
 
-    private float lastOutput;     // Store last output (for backprop)
-    private float lastWeightedSum; // Store last weighted input sum
-    private float[] lastInput;    // Store last input
+    private float[] weights; // Backing storage, possibly shared with a Layer
+    private int offset;      // Start of this neuron's row in weights
+    private int numInputs;
+    private float[] biases;  // Backing bias vector
+    private int index;       // This neuron's entry in biases
+
+    private transient float lastOutput;      // Store last output (for backprop)
+    private transient float lastWeightedSum; // Store last weighted input sum
+    private transient float[] lastInput;     // Store last input
 
     public Neuron(int numInputs) {
-        weights = new float[numInputs];
+        this(new float[numInputs], 0, numInputs, new float[1], 0);
         // Xavier/Glorot initialization: limit = sqrt(6 / (numInputs + 1))
         // (Here, we assume the neuron has one output; adjust if needed.)
         float limit = (float) Math.sqrt(6.0 / (numInputs + 1));
-        
+
         for (int i = 0; i < numInputs; i++) {
             // Initialize weights uniformly between -limit and limit.
             weights[i] = ThreadLocalRandom.current().nextFloat() * 2 * limit - limit;
         }
-        
+
         // Initialize bias uniformly between -limit and limit.
-        bias = ThreadLocalRandom.current().nextFloat() * 2 * limit - limit;
+        biases[0] = ThreadLocalRandom.current().nextFloat() * 2 * limit - limit;
+    }
+
+    // View onto row [offset, offset + numInputs) of a layer's weight matrix.
+    Neuron(float[] weights, int offset, int numInputs, float[] biases, int index) {
+        this.weights = weights;
+        this.offset = offset;
+        this.numInputs = numInputs;
+        this.biases = biases;
+        this.index = index;
     }
 
 
     // Compute the sum of weighted inputs + bias
     public float compute(float[] input) {
-        if (input.length != weights.length) {
-            throw new IllegalArgumentException("Input size must match weight size!");
-        }
-
-        lastInput = input.clone(); // Save input for backprop
-        float sum = bias;
-
-        for (int i = 0; i < input.length; i++) {
-            sum += input[i] * weights[i]; // the magic.
-        }
-
+        lastInput = input; // Save input for backprop (by reference, no copy)
+        float sum = computeRaw(input);
         lastWeightedSum = sum;
         lastOutput = ReLU(sum);
         return lastOutput;
     }
-    
+
     public float computeRaw(float[] input) {
-        if (input.length != weights.length) {
+        if (input.length != numInputs) {
             throw new IllegalArgumentException("Input size must match weight size!");
         }
-        float sum = bias;
-        for (int i = 0; i < input.length; i++) {
-            sum += input[i] * weights[i];
-        }
-        return sum;
+        return biases[index] + Kernels.dot(input, 0, weights, offset, numInputs); // the magic.
     }
 
 
@@ -71,16 +78,37 @@ public class Neuron implements Serializable {
     }
 
     // Getters and setters
+
+    /**
+     * Returns a copy of this neuron's weights. Before weights moved into the
+     * layer's matrix this returned the live array, and writing into it
+     * changed the neuron; writes to the copy are lost.
+     *
+     * @deprecated use getWeight and setWeight, which read and write the layer's matrix
+     */
+    @Deprecated
     public float[] getWeights() {
-        return weights;
+        return Arrays.copyOfRange(weights, offset, offset + numInputs);
+    }
+
+    public float getWeight(int i) {
+        return weights[offset + i];
+    }
+
+    public void setWeight(int i, float value) {
+        weights[offset + i] = value;
+    }
+
+    public int inputCount() {
+        return numInputs;
     }
 
     public float getBias() {
-        return bias;
+        return biases[index];
     }
 
     public void setBias(float newBias) {
-        this.bias = newBias;
+        biases[index] = newBias;
     }
 
     public float getLastOutput() {
@@ -94,4 +122,21 @@ public class Neuron implements Serializable {
     public float getLastWeightedSum() {
         return lastWeightedSum;
     }
+
+    // Old files store one weights array and a scalar bias per neuron.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        weights = (float[]) fields.get("weights", null);
+        biases = (float[]) fields.get("biases", null);
+        if (biases != null) {
+            offset = fields.get("offset", 0);
+            numInputs = fields.get("numInputs", 0);
+            index = fields.get("index", 0);
+        } else {
+            offset = 0;
+            numInputs = weights.length;
+            biases = new float[] { fields.get("bias", 0f) };
+            index = 0;
+        }
+    }
 }
@@ -0,0 +1,104 @@
+/**
+ * Everything one forward pass says about an input: the raw logits, the
+ * softmax probabilities, log-probabilities, the predicted label and the
+ * k most likely labels.
+ *
+ * Probabilities come from a max-subtracted softmax, and log-probabilities
+ * are logit - logSumExp, so both stay accurate for large logits where
+ * exp would overflow or a probability would round to zero.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class Prediction {
+    private final float[] logits;
+    private final float[] probabilities;
+    private final float logSumExp;
+    private final int label;
+    private final String model;
+
+    // Takes ownership of logits.
+    Prediction(float[] logits) {
+        this(logits, null);
+    }
+
+    // Takes ownership of logits; model names the model version that produced them.
+    Prediction(float[] logits, String model) {
+        this.logits = logits;
+        this.model = model;
+        this.probabilities = new float[logits.length];
+        this.logSumExp = Kernels.softmax(logits, 0, probabilities, 0, logits.length);
+        int best = 0;
+        for (int i = 1; i < logits.length; i++) {
+            if (logits[i] > logits[best]) {
+                best = i;
+            }
+        }
+        this.label = best;
+    }
+
+    // The most likely class.
+    public int label() {
+        return label;
+    }
+
+    // Version of the model that made this prediction (see ModelRegistry), or null if unknown.
+    public String model() {
+        return model;
+    }
+
+    // Probability of the predicted class.
+    public float confidence() {
+        return probabilities[label];
+    }
+
+    public int classCount() {
+        return logits.length;
+    }
+
+    public float logit(int c) {
+        return logits[c];
+    }
+
+    public float probability(int c) {
+        return probabilities[c];
+    }
+
+    public float logProbability(int c) {
+        return logits[c] - logSumExp;
+    }
+
+    public float[] logits() {
+        return logits.clone();
+    }
+
+    public float[] probabilities() {
+        return probabilities.clone();
+    }
+
+    public float[] logProbabilities() {
+        float[] result = new float[logits.length];
+        for (int i = 0; i < logits.length; i++) {
+            result[i] = logits[i] - logSumExp;
+        }
+        return result;
+    }
+
+    // The k most likely classes, most likely first.
+    public int[] topK(int k) {
+        k = Math.min(k, logits.length);
+        int[] result = new int[k];
+        boolean[] taken = new boolean[logits.length];
+        for (int j = 0; j < k; j++) {
+            int best = -1;
+            for (int i = 0; i < logits.length; i++) {
+                if (!taken[i] && (best < 0 || logits[i] > logits[best])) {
+                    best = i;
+                }
+            }
+            taken[best] = true;
+            result[j] = best;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Magnitude pruning: zeroes the smallest weights of every layer until the
+ * layer reaches a target sparsity, and remembers which ones it removed.
+ *
+ * Fine-tuning afterwards runs Brain.train with this pruner registered as a
+ * training listener; after every batch update it zeroes the pruned weights
+ * again, so they stay removed while the remaining ones recover the lost
+ * accuracy. A pruned brain can then be compressed into a SparseBrain.
+ *
+ *   Pruner pruner = Pruner.prune(brain, 0.9f);
+ *   pruner.fineTune(inputs, targets, 0.05f, 2, 32);
+ *   SparseBrain sparse = SparseBrain.compress(brain);
+ *
+ * Run as a program it prints accuracy against single-image speed at
+ * several sparsity levels:
+ *
+ * Usage: java Pruner [--model file] [--levels 0.5,0.8,0.9,0.95]
+ *                    [--finetune epochs] [--save]
+ * --save writes each pruned model as pruned_<percent>.bin.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class Pruner implements TrainingListener {
+    private final Brain brain;
+    private final boolean[][] pruned; // Per layer, true where the weight was removed
+
+    private Pruner(Brain brain, boolean[][] pruned) {
+        this.brain = brain;
+        this.pruned = pruned;
+    }
+
+    // Zeroes the smallest-magnitude fraction `sparsity` of each layer's weights in place.
+    // Biases are kept.
+    public static Pruner prune(Brain brain, float sparsity) {
+        if (sparsity < 0 || sparsity >= 1) {
+            throw new IllegalArgumentException("Sparsity must be in [0, 1)!");
+        }
+        Layer[] layers = brain.getLayers();
+        boolean[][] pruned = new boolean[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            float[] w = layers[l].getWeights();
+            pruned[l] = new boolean[w.length];
+            int count = (int) (sparsity * w.length);
+            if (count == 0) continue;
+            float[] magnitudes = new float[w.length];
+            for (int i = 0; i < w.length; i++) {
+                magnitudes[i] = Math.abs(w[i]);
+            }
+            Arrays.sort(magnitudes);
+            // Everything below the threshold goes, then ties at it until the count is reached
+            float threshold = magnitudes[count - 1];
+            int removed = 0;
+            for (int i = 0; i < w.length; i++) {
+                if (Math.abs(w[i]) < threshold) {
+                    pruned[l][i] = true;
+                    removed++;
+                }
+            }
+            for (int i = 0; i < w.length && removed < count; i++) {
+                if (Math.abs(w[i]) == threshold) {
+                    pruned[l][i] = true;
+                    removed++;
+                }
+            }
+        }
+        Pruner pruner = new Pruner(brain, pruned);
+        pruner.apply();
+        return pruner;
+    }
+
+    // Zeroes every pruned weight (again).
+    public void apply() {
+        Layer[] layers = brain.getLayers();
+        for (int l = 0; l < layers.length; l++) {
+            float[] w = layers[l].getWeights();
+            boolean[] mask = pruned[l];
+            for (int i = 0; i < w.length; i++) {
+                if (mask[i]) {
+                    w[i] = 0;
+                }
+            }
+        }
+    }
+
+    // Mini-batch training that leaves the pruned weights at zero.
+    public void fineTune(float[][] inputs, float[][] targets, float learningRate, int epochs, int batchSize) {
+        brain.addTrainingListener(this);
+        try {
+            brain.train(inputs, targets, learningRate, epochs, batchSize, 1);
+        } finally {
+            brain.removeTrainingListener(this);
+        }
+        apply();
+    }
+
+    @Override
+    public void batchFinished(TrainingStats stats) {
+        apply();
+    }
+
+    // Fraction of all weights removed.
+    public float sparsity() {
+        long removed = 0;
+        long total = 0;
+        for (boolean[] mask : pruned) {
+            for (boolean p : mask) {
+                if (p) removed++;
+            }
+            total += mask.length;
+        }
+        return total > 0 ? (float) removed / total : 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File modelFile = ModelFile.defaultFile();
+        float[] levels = {0.5f, 0.7f, 0.8f, 0.9f, 0.95f};
+        int fineTuneEpochs = 0;
+        boolean save = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model":
+                    modelFile = new File(args[++i]);
+                    break;
+                case "--levels":
+                    String[] parts = args[++i].split(",");
+                    levels = new float[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        levels[p] = Float.parseFloat(parts[p].trim());
+                    }
+                    break;
+                case "--finetune":
+                    fineTuneEpochs = Integer.parseInt(args[++i]);
+                    break;
+                case "--save":
+                    save = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        IdxDataset testSet = Evaluation.testSet();
+        float[][] inputs = testSet.inputs();
+        int[] labels = Evaluation.labels(testSet);
+        float[][] trainInputs = null;
+        float[][] trainTargets = null;
+        if (fineTuneEpochs > 0) {
+            IdxDataset trainingSet = Evaluation.trainingSet();
+            trainInputs = trainingSet.inputs();
+            trainTargets = trainingSet.oneHotTargets(TestTwo.NUM_CLASSES);
+        }
+
+        Brain original = ModelFile.load(modelFile);
+        System.out.println("Pruning " + modelFile + ", evaluated on " + inputs.length + " samples"
+                           + (fineTuneEpochs > 0 ? ", fine-tuned " + fineTuneEpochs + " epochs on "
+                                                   + trainInputs.length + " samples" : ""));
+        System.out.println();
+        System.out.println("sparsity  weights  accuracy  tuned acc  dense us  csr us  speedup  csr bytes");
+        report(0f, original, original, inputs, labels);
+        for (float level : levels) {
+            Brain brain = original.snapshot();
+            Pruner pruner = Pruner.prune(brain, level);
+            Brain tuned = null;
+            if (trainInputs != null) {
+                tuned = brain.snapshot();
+                new Pruner(tuned, pruner.pruned).fineTune(trainInputs, trainTargets, 0.05f, fineTuneEpochs, 32);
+            }
+            report(pruner.sparsity(), brain, tuned, inputs, labels);
+            if (save) {
+                File out = new File(String.format("pruned_%d.bin", Math.round(level * 100)));
+                ModelFile.save(tuned != null ? tuned : brain, out);
+            }
+        }
+        System.out.println();
+        System.out.println("dense us: Brain.forward (dense weights, zero pixels skipped in the first layer)");
+        System.out.println("csr us:   SparseBrain.forward on the pruned (and fine-tuned, if any) weights");
+    }
+
+    // One row of the table. tuned is null when there was no fine-tuning.
+    private static void report(float sparsity, Brain pruned, Brain tuned, float[][] inputs, int[] labels) {
+        Brain served = tuned != null ? tuned : pruned;
+        SparseBrain sparse = SparseBrain.compress(served);
+        double accuracy = Evaluation.evaluate(pruned, inputs, labels, null).accuracy();
+        String tunedAccuracy = tuned != null && tuned != pruned
+                ? String.format("%8.2f%%", Evaluation.evaluate(tuned, inputs, labels, null).accuracy() * 100)
+                : "        -";
+        double denseMicros = microsPerImage(served, inputs);
+        double sparseMicros = microsPerImage(sparse, inputs);
+        System.out.printf("%7.1f%%  %7d  %7.2f%%  %s  %8.2f  %6.2f  %6.2fx  %9d%n", sparsity * 100,
+                          sparse.nonZeroCount(), accuracy * 100, tunedAccuracy, denseMicros, sparseMicros,
+                          denseMicros / sparseMicros, sparse.sizeInBytes());
+    }
+
+    // Microseconds per single-image forward pass, after a warm-up round.
+    static double microsPerImage(Classifier model, float[][] inputs) {
+        for (int i = 0; i < 5000; i++) {
+            model.forward(inputs[i % inputs.length]);
+        }
+        int runs = 0;
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < 500_000_000L) {
+            model.forward(inputs[runs % inputs.length]);
+            runs++;
+        }
+        return (System.nanoTime() - start) / 1e3 / runs;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Int8 post-training quantized copy of a Brain, for inference only.
+ *
+ * Each weight row is stored as int8 with its own float scale
+ * (scale = max |w| / 127). Activations are quantized per sample to uint8
+ * (scale = max / 255); they are pixel intensities or ReLU outputs, so
+ * they are never negative. Dot products accumulate in int32 and are
+ * rescaled to float once per output, where the float bias is added.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class QuantizedBrain implements Classifier {
+    private final int[] sizes;       // Input size, then each layer's width
+    private final byte[][] weights;  // Per layer, numNeurons x numInputs, row-major int8
+    private final float[][] scales;  // Per layer, one scale per row
+    private final float[][] biases;
+
+    // Scratch per thread: quantized activations and the float outputs of each layer.
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private QuantizedBrain(int[] sizes, byte[][] weights, float[][] scales, float[][] biases) {
+        this.sizes = sizes;
+        this.weights = weights;
+        this.scales = scales;
+        this.biases = biases;
+    }
+
+    // Quantizes every layer of brain. The brain itself is not changed.
+    public static QuantizedBrain quantize(Brain brain) {
+        Layer[] layers = brain.getLayers();
+        int[] sizes = new int[layers.length + 1];
+        sizes[0] = layers[0].inputCount();
+        byte[][] weights = new byte[layers.length][];
+        float[][] scales = new float[layers.length][];
+        float[][] biases = new float[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            int rows = layers[l].neuronCount();
+            int cols = layers[l].inputCount();
+            sizes[l + 1] = rows;
+            float[] w = layers[l].getWeights();
+            weights[l] = new byte[rows * cols];
+            scales[l] = new float[rows];
+            biases[l] = layers[l].getBiases().clone();
+            for (int i = 0; i < rows; i++) {
+                float max = 0;
+                for (int j = 0; j < cols; j++) {
+                    max = Math.max(max, Math.abs(w[i * cols + j]));
+                }
+                float scale = max > 0 ? max / 127f : 1f;
+                scales[l][i] = scale;
+                for (int j = 0; j < cols; j++) {
+                    int q = Math.round(w[i * cols + j] / scale);
+                    weights[l][i * cols + j] = (byte) Math.max(-127, Math.min(127, q));
+                }
+            }
+        }
+        return new QuantizedBrain(sizes, weights, scales, biases);
+    }
+
+    @Override
+    public float[] pass(float[] input) {
+        return Brain.softmax(forward(input));
+    }
+
+    @Override
+    public float[] forward(float[] input) {
+        if (input.length != sizes[0]) {
+            throw new IllegalArgumentException("Input size must match weight size!");
+        }
+        Scratch s = scratch.get();
+        float[] activations = input;
+        int last = weights.length - 1;
+        for (int l = 0; l <= last; l++) {
+            float activationScale = quantize(activations, sizes[l], s.quantized);
+            // The previous activations are already copied into s.quantized, so out may reuse s.outputs.
+            float[] out = l == last ? new float[sizes[l + 1]] : s.outputs;
+            layer(l, s.quantized, activationScale, out, l < last);
+            activations = out;
+        }
+        return activations;
+    }
+
+    // out = ReLU?(rowScale * activationScale * (W_q . a_q) + b)
+    private void layer(int l, byte[] a, float activationScale, float[] out, boolean relu) {
+        int cols = sizes[l];
+        byte[] w = weights[l];
+        for (int i = 0; i < sizes[l + 1]; i++) {
+            int row = i * cols;
+            int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int j = 0;
+            for (; j + 4 <= cols; j += 4) {
+                s0 += (a[j] & 0xff) * w[row + j];
+                s1 += (a[j + 1] & 0xff) * w[row + j + 1];
+                s2 += (a[j + 2] & 0xff) * w[row + j + 2];
+                s3 += (a[j + 3] & 0xff) * w[row + j + 3];
+            }
+            for (; j < cols; j++) {
+                s0 += (a[j] & 0xff) * w[row + j];
+            }
+            float sum = (s0 + s1 + s2 + s3) * scales[l][i] * activationScale + biases[l][i];
+            out[i] = relu ? Math.max(0, sum) : sum;
+        }
+    }
+
+    // Quantizes x[0 .. n) to uint8 in dst and returns the scale (x ~ q * scale).
+    // Negative values clamp to 0.
+    private static float quantize(float[] x, int n, byte[] dst) {
+        float max = 0;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, x[i]);
+        }
+        if (max == 0) {
+            for (int i = 0; i < n; i++) {
+                dst[i] = 0;
+            }
+            return 1f;
+        }
+        float inverse = 255f / max;
+        for (int i = 0; i < n; i++) {
+            dst[i] = (byte) Math.round(Math.max(0, x[i]) * inverse);
+        }
+        return max / 255f;
+    }
+
+    // Bytes held by weights, scales and biases.
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (int l = 0; l < weights.length; l++) {
+            bytes += weights[l].length + 4L * scales[l].length + 4L * biases[l].length;
+        }
+        return bytes;
+    }
+
+    private final class Scratch {
+        final byte[] quantized;
+        final float[] outputs;
+
+        Scratch() {
+            int widest = 0;
+            for (int size : sizes) {
+                widest = Math.max(widest, size);
+            }
+            quantized = new byte[widest];
+            outputs = new float[widest];
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.io.IOException;
+
+/**
+ * A sequential stream of labelled uint8 images, read one record at a time.
+ *
+ * Used by streaming training so the dataset never has to sit in the heap
+ * as float[][].
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public interface SampleSource {
+    // Pixels per record.
+    int pixelCount();
+
+    // Rewinds to the first record (called at the start of every epoch).
+    void reset() throws IOException;
+
+    // Reads the next record's pixels into dst[offset .. offset + pixelCount())
+    // and returns its label, or -1 when the pass is over.
+    int next(byte[] dst, int offset) throws IOException;
+}
@@ -0,0 +1,121 @@
+/**
+ * Compressed sparse-row copy of a pruned Brain, for inference only.
+ *
+ * Each layer keeps only its nonzero weights: per row, the column index
+ * and value of every nonzero, with rowStarts marking where each row's run
+ * begins. A forward pass then does one multiply-add per kept weight, so a
+ * network pruned to 90% sparsity does about a tenth of the dense work.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class SparseBrain implements Classifier {
+    private final int[] sizes;        // Input size, then each layer's width
+    private final int[][] rowStarts;  // Per layer, numNeurons + 1 offsets into columns/values
+    private final int[][] columns;    // Per layer, input index of each kept weight
+    private final float[][] values;   // Per layer, the kept weights
+    private final float[][] biases;
+
+    // Scratch per thread: the outputs of the hidden layers.
+    private final ThreadLocal<float[][]> scratch = ThreadLocal.withInitial(this::newScratch);
+
+    private SparseBrain(int[] sizes, int[][] rowStarts, int[][] columns, float[][] values, float[][] biases) {
+        this.sizes = sizes;
+        this.rowStarts = rowStarts;
+        this.columns = columns;
+        this.values = values;
+        this.biases = biases;
+    }
+
+    // Compresses every layer of brain, dropping weights that are exactly zero.
+    // The brain itself is not changed.
+    public static SparseBrain compress(Brain brain) {
+        Layer[] layers = brain.getLayers();
+        int[] sizes = new int[layers.length + 1];
+        sizes[0] = layers[0].inputCount();
+        int[][] rowStarts = new int[layers.length][];
+        int[][] columns = new int[layers.length][];
+        float[][] values = new float[layers.length][];
+        float[][] biases = new float[layers.length][];
+        for (int l = 0; l < layers.length; l++) {
+            int rows = layers[l].neuronCount();
+            int cols = layers[l].inputCount();
+            sizes[l + 1] = rows;
+            float[] w = layers[l].getWeights();
+            int nonZeros = 0;
+            for (float v : w) {
+                if (v != 0) nonZeros++;
+            }
+            rowStarts[l] = new int[rows + 1];
+            columns[l] = new int[nonZeros];
+            values[l] = new float[nonZeros];
+            biases[l] = layers[l].getBiases().clone();
+            int t = 0;
+            for (int i = 0; i < rows; i++) {
+                rowStarts[l][i] = t;
+                for (int j = 0; j < cols; j++) {
+                    float v = w[i * cols + j];
+                    if (v != 0) {
+                        columns[l][t] = j;
+                        values[l][t] = v;
+                        t++;
+                    }
+                }
+            }
+            rowStarts[l][rows] = t;
+        }
+        return new SparseBrain(sizes, rowStarts, columns, values, biases);
+    }
+
+    @Override
+    public float[] pass(float[] input) {
+        return Brain.softmax(forward(input));
+    }
+
+    @Override
+    public float[] forward(float[] input) {
+        if (input.length != sizes[0]) {
+            throw new IllegalArgumentException("Input size must match weight size!");
+        }
+        float[][] hidden = scratch.get();
+        float[] activations = input;
+        int last = values.length - 1;
+        for (int l = 0; l <= last; l++) {
+            float[] out = l == last ? new float[sizes[l + 1]] : hidden[l];
+            Kernels.csrMatVec(rowStarts[l], columns[l], values[l], activations, biases[l], out, sizes[l + 1]);
+            if (l < last) {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = Math.max(0, out[i]);
+                }
+            }
+            activations = out;
+        }
+        return activations;
+    }
+
+    // Weights kept across all layers.
+    public long nonZeroCount() {
+        long count = 0;
+        for (float[] v : values) {
+            count += v.length;
+        }
+        return count;
+    }
+
+    // Bytes held by values, column indices, row offsets and biases.
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (int l = 0; l < values.length; l++) {
+            bytes += 4L * (values[l].length + columns[l].length + rowStarts[l].length + biases[l].length);
+        }
+        return bytes;
+    }
+
+    private float[][] newScratch() {
+        float[][] hidden = new float[sizes.length - 2][];
+        for (int l = 0; l < hidden.length; l++) {
+            hidden[l] = new float[sizes[l + 1]];
+        }
+        return hidden;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Nonzero entries of a batch of input rows, in compressed sparse-row form.
+ *
+ * MNIST images are mostly background (about 80% zeros), so the first
+ * layer can skip the zero pixels entirely: its forward product and its
+ * weight gradient only visit the indices stored here.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+final class SparseInput {
+    // Use the sparse kernels when at most this fraction of inputs is nonzero.
+    // The gathered loads cost more per element than the dense GEMM, so the
+    // break-even depends on which GEMM it competes with. Forward plus weight
+    // gradient for 32 rows on a 784x128 layer (dense / sparse, microseconds):
+    //
+    //   density      6%         10%         19%         35%         55%
+    //   scalar    2941/336    3123/690   2773/1051   2925/1818   3046/3166
+    //   Vector     463/316     540/539    722/1312    469/1816    502/2749
+    //
+    // Against the scalar loops the sparse path wins up to about 50%, so it
+    // covers MNIST (about 19% nonzero); against the Vector API GEMM it only
+    // wins below about 10%, so MNIST batches stay dense there.
+    static final float DENSITY_THRESHOLD = Kernels.VECTOR != null ? 0.08f : 0.4f;
+
+    final int[] starts;   // Row r's entries are [starts[r], starts[r + 1])
+    final int[] indices;  // Column of each entry
+    final float[] values; // Value of each entry
+
+    SparseInput(int capacity, int width) {
+        starts = new int[capacity + 1];
+        indices = new int[capacity * width];
+        values = new float[capacity * width];
+    }
+
+    // Indexes the nonzeros of dense[rows x width] and returns their density.
+    float compress(float[] dense, int rows, int width) {
+        int count = 0;
+        for (int r = 0; r < rows; r++) {
+            starts[r] = count;
+            int row = r * width;
+            for (int j = 0; j < width; j++) {
+                float v = dense[row + j];
+                if (v != 0) {
+                    indices[count] = j;
+                    values[count++] = v;
+                }
+            }
+        }
+        starts[rows] = count;
+        return rows == 0 ? 0 : (float) count / (rows * width);
+    }
+}
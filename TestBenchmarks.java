@@ -0,0 +1,315 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Micro-benchmarks for the hot paths: layer and neuron forward, Brain.pass
+ * (single and batched), one Brain.train epoch on a fixed synthetic set,
+ * softmax, model loading and image conversion.
+ *
+ * Every benchmark is warmed up, then timed over several fixed-length
+ * iterations. Besides time per operation it reports bytes allocated per
+ * operation (summed over all threads), the allocation rate and the number
+ * of GC cycles, so allocation regressions show up next to timing ones.
+ *
+ * Usage: java TestBenchmarks [--arch 784-128-64-10,784-256-10] [--batch 1,32,64]
+ *                            [--threads 1,4] [--filter name] [--quick]
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestBenchmarks {
+    static final int EPOCH_SAMPLES = 4096;
+    static final float DENSITY = 0.2f; // Fraction of nonzero pixels, as in MNIST
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    // Results are written here so the JIT cannot drop the benchmarked work.
+    static volatile Object sink;
+
+    static long warmupMillis = 1000;
+    static long iterationMillis = 500;
+    static int iterations = 5;
+    static String filter = "";
+
+    public static void main(String[] args) throws Exception {
+        int[][] architectures = {{784, 128, 64, 10}};
+        int[] batchSizes = {1, 32, 64};
+        int[] threadCounts = {1, Runtime.getRuntime().availableProcessors()};
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--arch":
+                    String[] list = args[++i].split(",");
+                    architectures = new int[list.length][];
+                    for (int a = 0; a < list.length; a++) {
+                        architectures[a] = parseInts(list[a].split("-"));
+                    }
+                    break;
+                case "--batch":
+                    batchSizes = parseInts(args[++i].split(","));
+                    break;
+                case "--threads":
+                    threadCounts = parseInts(args[++i].split(","));
+                    break;
+                case "--filter":
+                    filter = args[++i];
+                    break;
+                case "--quick":
+                    warmupMillis = 200;
+                    iterationMillis = 100;
+                    iterations = 3;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        System.out.printf("%-20s %-48s %12s %10s %12s %10s %5s%n",
+                          "benchmark", "params", "ns/op", "error", "B/op", "MB/s", "gc");
+        Random random = new Random(42);
+        for (int[] architecture : architectures) {
+            String arch = "arch=" + join(architecture);
+            Brain brain = new Brain(architecture);
+            Layer[] layers = brain.getLayers();
+            int inputSize = architecture[0];
+            int classes = architecture[architecture.length - 1];
+            float[][] inputs = new float[EPOCH_SAMPLES][];
+            float[][] targets = new float[EPOCH_SAMPLES][classes];
+            for (int i = 0; i < EPOCH_SAMPLES; i++) {
+                inputs[i] = sample(random, inputSize);
+                targets[i][random.nextInt(classes)] = 1.0f;
+            }
+            float[] input = inputs[0];
+
+            // Forward through each layer on its own, at the shapes of this architecture
+            for (Layer layer : layers) {
+                float[] layerInput = sample(random, layer.inputCount());
+                bench("Layer.compute", arch + " shape=" + layer.inputCount() + "x" + layer.neuronCount(),
+                      () -> layer.compute(layerInput));
+            }
+            Neuron neuron = layers[0].getNeurons()[0];
+            bench("Neuron.compute", arch + " inputs=" + neuron.inputCount(), () -> neuron.compute(input));
+
+            bench("Brain.pass", arch, () -> brain.pass(input));
+            InferenceContext context = brain.newContext();
+            bench("Brain.pass(ctx)", arch, () -> brain.pass(input, context));
+
+            float[] logits = brain.forward(input);
+            float[] probabilities = new float[classes];
+            bench("Brain.softmax", arch, () -> Brain.softmax(logits));
+            bench("Brain.softmax(out)", arch, () -> Brain.softmax(logits, probabilities));
+
+            // Trained without the per-epoch print, and with a listener so the
+            // per-batch progress events are built as they are in a real run.
+            Brain trainee = new Brain(architecture);
+            trainee.setPrintEpochLoss(false);
+            trainee.addTrainingListener(new TrainingListener() {
+            });
+
+            for (int batchSize : batchSizes) {
+                float[][] batch = new float[batchSize][];
+                float[][] batchLogits = new float[batchSize][classes];
+                float[][] batchProbabilities = new float[batchSize][classes];
+                System.arraycopy(inputs, 0, batch, 0, batchSize);
+                for (int threads : threadCounts) {
+                    String params = arch + " batch=" + batchSize + " threads=" + threads;
+                    ForkJoinPool pool = new ForkJoinPool(threads);
+                    try {
+                        // A parallel stream started inside a pool runs on that pool's workers.
+                        bench("Brain.passBatch", params, () -> pool.submit(
+                              () -> brain.passBatch(batch, batchLogits, batchProbabilities, threads > 1)).get());
+                        // The real training loop: shuffle, batches, progress events, sparse first layer.
+                        // A tiny learning rate keeps the weights stable across runs.
+                        bench("Brain.train", params + " samples=" + EPOCH_SAMPLES, () -> {
+                            trainee.train(inputs, targets, 1e-6f, 1, batchSize, threads);
+                            return trainee;
+                        });
+                    } finally {
+                        pool.shutdown();
+                    }
+                }
+            }
+
+            // Model loading, from both formats
+            File binary = File.createTempFile("bench", ".bin");
+            File serialized = File.createTempFile("bench", ".ser");
+            binary.deleteOnExit();
+            serialized.deleteOnExit();
+            ModelFile.save(brain, binary);
+            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(serialized))) {
+                out.writeObject(brain);
+            }
+            bench("ModelFile.load", arch + " format=bin", () -> ModelFile.load(binary));
+            bench("ModelFile.load", arch + " format=ser", () -> ModelFile.load(serialized));
+        }
+
+        // Image to input vector, for the image types ImageIO returns for MNIST PNGs,
+        // against the per-pixel getRGB loop ImageLoader replaced
+        int[] imageTypes = {BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+                            BufferedImage.TYPE_4BYTE_ABGR};
+        String[] imageNames = {"gray", "rgb", "argb", "abgr"};
+        for (int t = 0; t < imageTypes.length; t++) {
+            BufferedImage img = image(random, imageTypes[t]);
+            byte[] gray = new byte[TestTwo.INPUT_SIZE];
+            String params = "type=" + imageNames[t];
+            bench("getRGB per pixel", params, () -> perPixelGray(img, gray));
+            bench("ImageLoader.toGray", params, () -> {
+                ImageLoader.toGray(img, gray, TestTwo.IMAGE_HEIGHT, TestTwo.IMAGE_WIDTH);
+                return gray;
+            });
+            bench("ImageLoader.toFloats", params, () -> ImageLoader.toFloats(img));
+        }
+
+        // One random distortion of a training image
+        float[] digit = ImageLoader.toFloats(image(random, BufferedImage.TYPE_BYTE_GRAY));
+        float[] distorted = new float[digit.length];
+        for (String kind : new String[] {"affine", "elastic"}) {
+            Augmenter augmenter = kind.equals("affine") ? new Augmenter(28, 28, 2f, 12f, 0.1f, 0f, 0f)
+                                                        : Augmenter.mnist();
+            float[][] scratch = augmenter.newScratch();
+            SplittableRandom seeds = new SplittableRandom(42);
+            bench("Augmenter.apply", "distortion=" + kind, () -> {
+                augmenter.apply(digit, distorted, 0, seeds.split(), scratch);
+                return distorted;
+            });
+        }
+    }
+
+    // The conversion as it was before ImageLoader: one getRGB call per pixel.
+    static byte[] perPixelGray(BufferedImage img, byte[] dst) {
+        int index = 0;
+        for (int y = 0; y < TestTwo.IMAGE_HEIGHT; y++) {
+            for (int x = 0; x < TestTwo.IMAGE_WIDTH; x++) {
+                int rgb = img.getRGB(x, y);
+                dst[index++] = (byte) ((((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3);
+            }
+        }
+        return dst;
+    }
+
+    // Warms up, measures, and prints one result line.
+    static void bench(String name, String params, Operation operation) throws Exception {
+        if (!(name + " " + params).contains(filter)) {
+            return;
+        }
+        runFor(operation, warmupMillis * 1_000_000L);
+
+        double[] nanosPerOp = new double[iterations];
+        long totalOps = 0;
+        long totalNanos = 0;
+        Map<Long, Long> allocatedBefore = allocatedBytes();
+        long gcBefore = gcCount();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long ops = runFor(operation, iterationMillis * 1_000_000L);
+            long elapsed = System.nanoTime() - start;
+            nanosPerOp[i] = (double) elapsed / ops;
+            totalOps += ops;
+            totalNanos += elapsed;
+        }
+        long gcCycles = gcCount() - gcBefore;
+        long allocated = allocatedSince(allocatedBefore);
+
+        double mean = 0;
+        for (double v : nanosPerOp) {
+            mean += v;
+        }
+        mean /= iterations;
+        double variance = 0;
+        for (double v : nanosPerOp) {
+            variance += (v - mean) * (v - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        System.out.printf("%-20s %-48s %12.1f %10.1f %12.1f %10.1f %5d%n", name, params, mean, error,
+                          (double) allocated / totalOps, allocated / 1e6 / (totalNanos / 1e9), gcCycles);
+    }
+
+    // Runs operation repeatedly for about the given time; returns the number of runs.
+    private static long runFor(Operation operation, long nanos) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        do {
+            sink = operation.run();
+            ops++;
+        } while (System.nanoTime() - start < nanos);
+        return ops;
+    }
+
+    // Bytes allocated so far by every live thread.
+    private static Map<Long, Long> allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                result.put(ids[i], bytes[i]);
+            }
+        }
+        return result;
+    }
+
+    // Bytes allocated since the snapshot, by threads still alive (pool workers are).
+    private static long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocatedBytes().entrySet()) {
+            total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    // MNIST-like input: mostly zeros, the rest in (0, 1].
+    static float[] sample(Random random, int size) {
+        float[] result = new float[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = random.nextFloat() < DENSITY ? random.nextFloat() : 0f;
+        }
+        return result;
+    }
+
+    static BufferedImage image(Random random, int type) {
+        BufferedImage img = new BufferedImage(TestTwo.IMAGE_WIDTH, TestTwo.IMAGE_HEIGHT, type);
+        for (int y = 0; y < TestTwo.IMAGE_HEIGHT; y++) {
+            for (int x = 0; x < TestTwo.IMAGE_WIDTH; x++) {
+                int v = random.nextFloat() < DENSITY ? random.nextInt(256) : 0;
+                img.setRGB(x, y, 0xff000000 | v << 16 | v << 8 | v);
+            }
+        }
+        return img;
+    }
+
+    private static int[] parseInts(String[] values) {
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Integer.parseInt(values[i].trim());
+        }
+        return result;
+    }
+
+    private static String join(int[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i > 0 ? "-" : "").append(values[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Random;
+
+/**
+ * Hogwild convergence check: trains two copies of the same network on a
+ * learnable synthetic task, one with synchronous per-sample SGD and one
+ * with lock-free Hogwild on several threads, and compares the loss and
+ * accuracy they reach.
+ *
+ * Usage: java TestHogwild [threads] [epochs]
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestHogwild {
+    static final float MAX_LOSS_RATIO = 1.15f; // Hogwild may end at most this much above synchronous
+
+    public static void main(String[] args) {
+        int[] architecture = {784, 64, 10};
+        int numSamples = 4096;
+        float learningRate = 0.05f;
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        // MNIST-shaped sparse inputs; the label is the best of 10 fixed random
+        // projections, so there is something to learn.
+        Random random = new Random(42);
+        int classes = architecture[architecture.length - 1];
+        float[][] projections = new float[classes][architecture[0]];
+        for (float[] p : projections) {
+            for (int j = 0; j < p.length; j++) {
+                p[j] = (float) random.nextGaussian();
+            }
+        }
+        float[][] inputs = new float[numSamples][architecture[0]];
+        float[][] targets = new float[numSamples][classes];
+        int[] labels = new int[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            for (int j = 0; j < architecture[0]; j++) {
+                inputs[i][j] = random.nextFloat() < 0.2f ? random.nextFloat() : 0f;
+            }
+            float best = Float.NEGATIVE_INFINITY;
+            for (int c = 0; c < classes; c++) {
+                float score = Kernels.dot(inputs[i], 0, projections[c], 0, architecture[0]);
+                if (score > best) {
+                    best = score;
+                    labels[i] = c;
+                }
+            }
+            targets[i][labels[i]] = 1.0f;
+        }
+
+        // Same starting weights for both runs.
+        Brain synchronous = new Brain(architecture);
+        Brain hogwild = synchronous.snapshot();
+        Evaluation before = Evaluation.evaluate(synchronous, inputs, labels, null);
+
+        long start = System.nanoTime();
+        synchronous.train(inputs, targets, learningRate, epochs, 1, 1);
+        double syncSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        hogwild.trainHogwild(inputs, targets, learningRate, epochs, threads);
+        double hogwildSeconds = (System.nanoTime() - start) / 1e9;
+
+        Evaluation sync = Evaluation.evaluate(synchronous, inputs, labels, null);
+        Evaluation async = Evaluation.evaluate(hogwild, inputs, labels, null);
+        System.out.printf("%-22s log loss %.4f  accuracy %6.2f%%%n", "Untrained:", before.logLoss(),
+                          before.accuracy() * 100);
+        System.out.printf("%-22s log loss %.4f  accuracy %6.2f%%  %.1f s%n", "Synchronous, 1 thread:", sync.logLoss(),
+                          sync.accuracy() * 100, syncSeconds);
+        System.out.printf("%-22s log loss %.4f  accuracy %6.2f%%  %.1f s%n", "Hogwild, " + threads + " threads:",
+                          async.logLoss(), async.accuracy() * 100, hogwildSeconds);
+        boolean converged = async.logLoss() < before.logLoss() && async.logLoss() <= sync.logLoss() * MAX_LOSS_RATIO;
+        System.out.println(converged ? "Hogwild converges comparably to synchronous SGD"
+                                     : "Hogwild did NOT converge comparably to synchronous SGD");
+        if (!converged) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.Random;
+
+/**
+ * Throughput of the kernels for each layer shape of the MNIST network:
+ * plain single-accumulator loops, the tuned scalar kernels, and the SIMD
+ * backend when one is loaded (see Kernels). The SIMD results are also
+ * checked against the scalar ones.
+ *
+ * Usage: java TestKernels, or with the Vector API backend:
+ *        java --add-modules jdk.incubator.vector TestKernels
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestKernels {
+    static final int[][] SHAPES = {{784, 128}, {128, 64}, {64, 10}};
+    static final int BATCH = 64;
+    static final float TOLERANCE = 1e-4f; // Relative; summation order differs between backends
+
+    public static void main(String[] args) {
+        Random random = new Random(7);
+        KernelBackend simd = Kernels.VECTOR;
+        System.out.println("Kernel backend: " + Kernels.backend());
+        System.out.println("shape      kernel            plain GFLOP/s  scalar GFLOP/s  simd GFLOP/s  vs scalar");
+        boolean agree = true;
+        for (int[] shape : SHAPES) {
+            int inputs = shape[0];
+            int neurons = shape[1];
+            float[] w = randomArray(random, inputs * neurons);
+            float[] bias = randomArray(random, neurons);
+            float[] x = randomArray(random, BATCH * inputs);
+            float[] out = new float[BATCH * neurons];
+            float[] expected = new float[BATCH * neurons];
+            double flops = 2.0 * inputs * neurons;
+            String name = inputs + "x" + neurons;
+
+            // Matrix-vector (one sample)
+            double plain = measure(() -> scalarForward(x, w, bias, out, 1, neurons, inputs));
+            double scalar = measure(() -> {
+                for (int j = 0; j < neurons; j++) {
+                    out[j] = bias[j] + Kernels.scalarDot(x, 0, w, j * inputs, inputs);
+                }
+            });
+            double vector = Double.NaN;
+            if (simd != null) {
+                vector = measure(() -> {
+                    for (int j = 0; j < neurons; j++) {
+                        out[j] = bias[j] + simd.dot(x, 0, w, j * inputs, inputs);
+                    }
+                });
+            }
+            report(name, "matvec", flops / plain, flops / scalar, flops / vector);
+
+            // Matrix-matrix (one batch)
+            plain = measure(() -> scalarForward(x, w, bias, out, BATCH, neurons, inputs));
+            scalar = measure(() -> Kernels.scalarGemmNT(x, w, bias, out, BATCH, neurons, inputs));
+            if (simd != null) {
+                vector = measure(() -> simd.gemmNT(x, w, bias, out, BATCH, neurons, inputs));
+                Kernels.scalarGemmNT(x, w, bias, expected, BATCH, neurons, inputs);
+                agree &= check(name + " gemm", expected, out);
+            }
+            report(name, "gemm batch " + BATCH, BATCH * flops / plain, BATCH * flops / scalar, BATCH * flops / vector);
+
+            // AXPY weight update
+            float[] g = randomArray(random, inputs * neurons);
+            plain = measure(() -> {
+                for (int i = 0; i < w.length; i++) {
+                    w[i] -= Layer.clip(1e-6f * g[i], 0.1f);
+                }
+            });
+            scalar = measure(() -> Kernels.scalarClippedUpdate(w, g, 1e-6f, 0.1f, w.length));
+            if (simd != null) {
+                vector = measure(() -> simd.clippedUpdate(w, g, 1e-6f, 0.1f, w.length));
+                float[] before = w.clone();
+                float[] gradients = randomArray(random, w.length);
+                Kernels.scalarClippedUpdate(w, gradients, 0.05f, 0.1f, w.length);
+                float[] vectorResult = before.clone();
+                simd.clippedUpdate(vectorResult, gradients, 0.05f, 0.1f, w.length);
+                agree &= check(name + " update", w, vectorResult);
+            }
+            report(name, "update", flops / plain, flops / scalar, flops / vector);
+        }
+        if (simd != null) {
+            System.out.println(agree ? "SIMD results match scalar within " + TOLERANCE
+                                     : "SIMD results DIFFER from scalar");
+        }
+    }
+
+    // True if actual matches expected within TOLERANCE, relative to the larger magnitude.
+    static boolean check(String what, float[] expected, float[] actual) {
+        float worst = 0;
+        for (int i = 0; i < expected.length; i++) {
+            float scale = Math.max(1f, Math.max(Math.abs(expected[i]), Math.abs(actual[i])));
+            worst = Math.max(worst, Math.abs(expected[i] - actual[i]) / scale);
+        }
+        if (worst > TOLERANCE) {
+            System.out.println(what + ": max relative difference " + worst);
+            return false;
+        }
+        return true;
+    }
+
+    // Reference: one running sum per output, the way Neuron.compute used to do it.
+    static void scalarForward(float[] a, float[] b, float[] bias, float[] c, int m, int n, int k) {
+        for (int r = 0; r < m; r++) {
+            for (int j = 0; j < n; j++) {
+                float sum = bias[j];
+                for (int p = 0; p < k; p++) {
+                    sum += a[r * k + p] * b[j * k + p];
+                }
+                c[r * n + j] = sum;
+            }
+        }
+    }
+
+    // Average nanoseconds per run after warm-up.
+    static double measure(Runnable kernel) {
+        for (int i = 0; i < 2000; i++) {
+            kernel.run();
+        }
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            kernel.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 300_000_000L);
+        return (double) elapsed / runs;
+    }
+
+    // One row; simdGflops is NaN without a SIMD backend.
+    static void report(String shape, String kernel, double plainGflops, double scalarGflops, double simdGflops) {
+        if (Double.isNaN(simdGflops)) {
+            System.out.printf("%-10s %-16s %14.2f %15.2f %13s %10s%n", shape, kernel, plainGflops, scalarGflops,
+                              "-", "-");
+        } else {
+            System.out.printf("%-10s %-16s %14.2f %15.2f %13.2f %9.2fx%n", shape, kernel, plainGflops, scalarGflops,
+                              simdGflops, simdGflops / scalarGflops);
+        }
+    }
+
+    static float[] randomArray(Random random, int n) {
+        float[] result = new float[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = random.nextFloat() * 2 - 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Hot-swap check for ModelRegistry: watches a temporary directory and
+ * writes model files into it one at a time, checking after each that the
+ * registry swapped, rejected or ignored it as it should.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestModelRegistry {
+    static final long WAIT_MILLIS = 5000;  // Longest wait for the watcher to react
+    static final long QUIET_MILLIS = 1000; // How long to wait before concluding nothing happened
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int[] architecture = {784, 32, 10};
+        Path dir = Files.createTempDirectory("models");
+        try {
+            ModelFile.save(new Brain(architecture), dir.resolve("a.bin").toFile());
+            try (ModelRegistry registry = ModelRegistry.watch(dir.toFile())) {
+                check("serves the first model", registry.current().version().startsWith("a.bin#"));
+
+                // A valid new version goes live
+                Thread.sleep(20); // Later mtime than a.bin
+                ModelFile.save(new Brain(architecture), dir.resolve("b.bin").toFile());
+                check("swaps to a valid new model", waitFor(() -> registry.swapCount() == 1)
+                                                    && registry.current().version().startsWith("b.bin#"));
+
+                // A corrupt file is rejected and b stays live
+                Thread.sleep(20);
+                Files.write(dir.resolve("c.bin"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+                check("rejects a corrupt model", waitFor(() -> registry.rejectionCount() == 1)
+                                                 && registry.current().version().startsWith("b.bin#"));
+
+                // A model with a different output size is rejected
+                Thread.sleep(20);
+                ModelFile.save(new Brain(new int[] {784, 32, 5}), dir.resolve("d.bin").toFile());
+                check("rejects a model of another shape", waitFor(() -> registry.rejectionCount() == 2)
+                                                          && registry.current().version().startsWith("b.bin#"));
+
+                // Serialized files are never loaded
+                try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(dir.resolve("e.ser")))) {
+                    out.writeObject(new Brain(architecture));
+                }
+                check("ignores a .ser file", stays(() -> registry.swapCount() == 1 && registry.rejectionCount() == 2));
+
+                // Rewriting an older file doesn't roll back: it isn't the newest
+                File a = dir.resolve("a.bin").toFile();
+                ModelFile.save(new Brain(architecture), a);
+                a.setLastModified(System.currentTimeMillis() - 60_000);
+                check("ignores a change to an older model", stays(() -> registry.swapCount() == 1)
+                                                            && registry.current().version().startsWith("b.bin#"));
+
+                // The next valid version goes live
+                Thread.sleep(20);
+                ModelFile.save(new Brain(architecture), dir.resolve("f.bin").toFile());
+                check("swaps again after rejections", waitFor(() -> registry.swapCount() == 2)
+                                                      && registry.current().version().startsWith("f.bin#"));
+                System.out.println("Live: " + registry.current() + ", loads " + registry.loadCount() + ", swaps "
+                                   + registry.swapCount() + ", rejections " + registry.rejectionCount()
+                                   + " (last: " + registry.lastRejection() + ")");
+            }
+        } finally {
+            File[] files = dir.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+        System.out.println(failures == 0 ? "All hot-swap checks passed" : failures + " hot-swap check(s) FAILED");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String what, boolean passed) {
+        System.out.println((passed ? "ok    " : "FAIL  ") + what);
+        if (!passed) {
+            failures++;
+        }
+    }
+
+    // True once condition holds, false if it doesn't within WAIT_MILLIS.
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    // True if condition still holds after the watcher has had time to react.
+    private static boolean stays(BooleanSupplier condition) throws InterruptedException {
+        Thread.sleep(QUIET_MILLIS);
+        return condition.getAsBoolean();
+    }
+}
@@ -3,10 +3,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Arrays;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
 
 public class TestNetwork {
     public static final int IMAGE_WIDTH = 28;
@@ -15,46 +11,47 @@ public class TestNetwork {
     public static final int NUM_CLASSES = 10;
     
     public static void main(String[] args) {
-        // Load test data from the "train" folder (expects subfolders 0-9)
-        // For each digit, pick 10 random files.
-        String testPath = "train";
-        ArrayList<TrainingExample> testExamples = new ArrayList<>();
+        // "--all" scores the whole test set instead (see Evaluation for its options)
+        if (args.length > 0 && args[0].equals("--all")) {
+            Evaluation.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         
-        for (int label = 0; label < NUM_CLASSES; label++) {
-            File labelFolder = new File(testPath + File.separator + label);
-            if (!labelFolder.exists() || !labelFolder.isDirectory()) {
-                System.err.println("Folder not found: " + labelFolder.getAbsolutePath());
-                continue;
+        // Load test data from the t10k IDX files if present, otherwise from the
+        // "train" folder (expects subfolders 0-9).
+        // For each digit, pick 10 random examples.
+        File idxImages = new File("t10k-images-idx3-ubyte");
+        File idxLabels = new File("t10k-labels-idx1-ubyte");
+        ArrayList<TrainingExample> all;
+        try {
+            if (idxImages.exists() && idxLabels.exists()) {
+                all = TestTwo.loadIdx(idxImages, idxLabels);
+            } else {
+                all = TestTwo.loadFolder("train");
             }
-            File[] imageFiles = labelFolder.listFiles();
-            if (imageFiles == null || imageFiles.length == 0) continue;
-            
-            // Shuffle files and pick 10 random files per label
-            ArrayList<File> filesList = new ArrayList<>(Arrays.asList(imageFiles));
-            Collections.shuffle(filesList);
-            int count = Math.min(10, filesList.size());
-            
-            for (int i = 0; i < count; i++) {
-                File imgFile = filesList.get(i);
-                try {
-                    BufferedImage img = ImageIO.read(imgFile);
-                    if (img == null) continue;
-                    float[] inputVector = imageToFloatArray(img);
-                    testExamples.add(new TrainingExample(inputVector, label));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        Collections.shuffle(all);
+        ArrayList<TrainingExample> testExamples = new ArrayList<>();
+        int[] perLabel = new int[NUM_CLASSES];
+        for (TrainingExample ex : all) {
+            if (perLabel[ex.label] < 10) {
+                perLabel[ex.label]++;
+                testExamples.add(ex);
             }
         }
         
         System.out.println("Loaded " + testExamples.size() + " test examples.");
         
-        // Deserialize the trained network from "trained_brain.ser"
+        // Load the trained network (trained_brain.bin, or the older trained_brain.ser)
         Brain brain = null;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("trained_brain.ser"))) {
-            brain = (Brain) ois.readObject();
-            System.out.println("Trained network loaded from trained_brain.ser");
-        } catch (IOException | ClassNotFoundException e) {
+        File modelFile = ModelFile.defaultFile();
+        try {
+            brain = ModelFile.load(modelFile);
+            System.out.println("Trained network loaded from " + modelFile);
+        } catch (IOException e) {
             e.printStackTrace();
             return;
         }
@@ -65,11 +62,12 @@ public class TestNetwork {
             TrainingExample ex = testExamples.get(i);
             
             // Get inference output (softmax probabilities)
-            float[] output = brain.pass(ex.input);
-            int predicted = argmax(output);
+            Prediction prediction = brain.predict(ex.input);
+            float[] output = prediction.probabilities();
+            int predicted = prediction.label();
             
-            // Also get raw logits (before softmax)
-            float[] rawLogits = brain.forward(ex.input);
+            // Also get raw logits (before softmax), from the same forward pass
+            float[] rawLogits = prediction.logits();
             
             if (predicted == ex.label) {
                 correct++;
@@ -100,24 +98,6 @@ public class TestNetwork {
         System.out.println("Test Accuracy: " + accuracy + "%");
     }
     
-    // Convert a BufferedImage (assumed 28x28 grayscale) to a normalized float array.
-    // This method averages the R, G, and B channels.
-    public static float[] imageToFloatArray(BufferedImage img) {
-        float[] result = new float[INPUT_SIZE];
-        int index = 0;
-        for (int y = 0; y < IMAGE_HEIGHT; y++) {
-            for (int x = 0; x < IMAGE_WIDTH; x++) {
-                int rgb = img.getRGB(x, y);
-                int r = (rgb >> 16) & 0xff;
-                int g = (rgb >> 8) & 0xff;
-                int b = rgb & 0xff;
-                int gray = (r + g + b) / 3;
-                result[index++] = gray / 255.0f;
-            }
-        }
-        return result;
-    }
-    
     // Helper method: returns index of maximum value in an array.
     public static int argmax(float[] arr) {
         int index = 0;
@@ -0,0 +1,70 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Data-parallel training check: compares single- and multi-threaded
+ * gradients, then prints an epoch-time speedup curve from 1 to N cores.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestParallel {
+    public static void main(String[] args) {
+        int[] architecture = {784, 128, 64, 10};
+        int numSamples = 8192;
+        int batchSize = 64;
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        // MNIST-shaped random data: ~20% nonzero pixels, random one-hot labels.
+        Random random = new Random(42);
+        float[][] inputs = new float[numSamples][architecture[0]];
+        float[][] targets = new float[numSamples][architecture[3]];
+        for (int i = 0; i < numSamples; i++) {
+            for (int j = 0; j < architecture[0]; j++) {
+                inputs[i][j] = random.nextFloat() < 0.2f ? random.nextFloat() : 0f;
+            }
+            targets[i][random.nextInt(architecture[3])] = 1.0f;
+        }
+
+        // Gradients of one batch must match single-threaded within float tolerance.
+        Brain brain = new Brain(architecture);
+        Layer[] layers = brain.getLayers();
+        int[] indices = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            indices[i] = i;
+        }
+        TrainingBuffers single = new TrainingBuffers(layers, batchSize);
+        double singleLoss = single.computeGradients(layers, inputs, targets, indices, 0, batchSize);
+        int workerCount = Math.max(2, maxThreads);
+        TrainingBuffers[] workers = new TrainingBuffers[workerCount];
+        for (int w = 0; w < workerCount; w++) {
+            workers[w] = new TrainingBuffers(layers, (batchSize + workerCount - 1) / workerCount);
+        }
+        ForkJoinPool pool = new ForkJoinPool(workerCount);
+        double parallelLoss = pool.invoke(new GradientTask(layers, inputs, targets, indices, 0, batchSize, workers, workerCount));
+        pool.shutdown();
+        float maxDiff = 0;
+        for (int l = 0; l < layers.length; l++) {
+            for (int i = 0; i < single.gradWeights[l].length; i++) {
+                maxDiff = Math.max(maxDiff, Math.abs(single.gradWeights[l][i] - workers[0].gradWeights[l][i]));
+            }
+        }
+        System.out.println("Loss 1 thread: " + singleLoss + ", " + workerCount + " threads: " + parallelLoss);
+        System.out.println("Max gradient difference: " + maxDiff);
+
+        // Speedup curve: one epoch per thread count, after a warm-up epoch.
+        new Brain(architecture).train(inputs, targets, 0.1f, 1, batchSize, maxThreads);
+        double baseline = 0;
+        System.out.println("threads  epoch ms  speedup");
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            Brain b = new Brain(architecture);
+            long start = System.nanoTime();
+            b.train(inputs, targets, 0.1f, 1, batchSize, threads);
+            double ms = (System.nanoTime() - start) / 1e6;
+            if (threads == 1) {
+                baseline = ms;
+            }
+            System.out.printf("%7d  %8.1f  %7.2fx%n", threads, ms, baseline / ms);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares the int8 quantized network with the float one on a held-out
+ * set: accuracy, agreement, model size and single-image throughput.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestQuantization {
+    public static void main(String[] args) throws IOException {
+        File modelFile = ModelFile.defaultFile();
+        Brain brain = ModelFile.load(modelFile);
+        QuantizedBrain quantized = QuantizedBrain.quantize(brain);
+        System.out.println("Trained network loaded from " + modelFile);
+
+        // Held-out set: the t10k IDX files, otherwise the "test" or "train" folder.
+        IdxDataset dataset = Evaluation.testSet();
+        float[][] inputs = dataset.inputs();
+        int[] labels = Evaluation.labels(dataset);
+        if (inputs.length == 0) {
+            System.err.println("No evaluation data found.");
+            return;
+        }
+
+        int floatCorrect = 0;
+        int int8Correct = 0;
+        int agree = 0;
+        float maxProbabilityError = 0;
+        for (int s = 0; s < inputs.length; s++) {
+            float[] p = brain.pass(inputs[s]);
+            float[] q = quantized.pass(inputs[s]);
+            int floatPredicted = TestTwo.argmax(p);
+            int int8Predicted = TestTwo.argmax(q);
+            if (floatPredicted == labels[s]) floatCorrect++;
+            if (int8Predicted == labels[s]) int8Correct++;
+            if (floatPredicted == int8Predicted) agree++;
+            for (int i = 0; i < p.length; i++) {
+                maxProbabilityError = Math.max(maxProbabilityError, Math.abs(p[i] - q[i]));
+            }
+        }
+        int n = inputs.length;
+        long floatBytes = 0;
+        for (Layer layer : brain.getLayers()) {
+            floatBytes += 4L * (layer.getWeights().length + layer.getBiases().length);
+        }
+
+        System.out.println("Examples:            " + n);
+        System.out.printf("Float accuracy:      %.2f%%%n", 100.0 * floatCorrect / n);
+        System.out.printf("Int8 accuracy:       %.2f%%%n", 100.0 * int8Correct / n);
+        System.out.printf("Prediction agreement: %.2f%%%n", 100.0 * agree / n);
+        System.out.printf("Max probability error: %.4f%n", maxProbabilityError);
+        System.out.printf("Model size:          %d bytes float, %d bytes int8%n", floatBytes, quantized.sizeInBytes());
+        System.out.printf("Throughput:          %.0f images/s float, %.0f images/s int8%n",
+                          throughput(brain, inputs), throughput(quantized, inputs));
+    }
+
+    // Images per second through pass, after a warm-up round.
+    static double throughput(Classifier model, float[][] inputs) {
+        for (int i = 0; i < 2000; i++) {
+            model.pass(inputs[i % inputs.length]);
+        }
+        int runs = 0;
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < 1_000_000_000L) {
+            model.pass(inputs[runs % inputs.length]);
+            runs++;
+        }
+        return runs / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.Random;
+
+/**
+ * Checks the sparse first-layer path against the dense one: forward
+ * outputs and weight gradients of a 784x128 layer on random batches from
+ * very sparse to fully dense, and a full training step through
+ * TrainingBuffers on each side of SparseInput.DENSITY_THRESHOLD.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestSparseInput {
+    static final float[] DENSITIES = {0.02f, 0.1f, 0.19f, 0.25f, 0.5f, 1f};
+    static final int BATCH = 64;
+    static final float TOLERANCE = 1e-5f; // Relative; the kernels sum in different orders
+
+    public static void main(String[] args) {
+        Random random = new Random(11);
+        int[] architecture = {784, 128, 64, 10};
+        Brain brain = new Brain(architecture);
+        Layer[] layers = brain.getLayers();
+        Layer first = layers[0];
+        int inputs = first.inputCount();
+        int neurons = first.neuronCount();
+        boolean ok = true;
+
+        System.out.println("density  forward diff  gradient diff  step diff  path");
+        for (float density : DENSITIES) {
+            float[][] samples = new float[BATCH][inputs];
+            float[][] targets = new float[BATCH][architecture[3]];
+            float[] batch = new float[BATCH * inputs];
+            for (int r = 0; r < BATCH; r++) {
+                for (int j = 0; j < inputs; j++) {
+                    float v = random.nextFloat() < density ? random.nextFloat() : 0f;
+                    samples[r][j] = v;
+                    batch[r * inputs + j] = v;
+                }
+                targets[r][random.nextInt(architecture[3])] = 1.0f;
+            }
+
+            // Forward: the sparse kernel on every batch, whatever its density
+            float[] dense = new float[BATCH * neurons];
+            float[] sparse = new float[BATCH * neurons];
+            first.forwardBatch(batch, dense, BATCH, true);
+            SparseInput nonZeros = new SparseInput(BATCH, inputs);
+            nonZeros.compress(batch, BATCH, inputs);
+            Kernels.spmmNT(nonZeros, first.getWeights(), first.getBiases(), sparse, BATCH, neurons, inputs);
+            for (int i = 0; i < sparse.length; i++) {
+                sparse[i] = Math.max(0, sparse[i]);
+            }
+            float forwardDiff = maxRelativeDiff(dense, sparse);
+
+            // Weight gradients from the same deltas
+            float[] delta = new float[BATCH * neurons];
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] = random.nextFloat() * 2 - 1;
+            }
+            float[] denseGrad = new float[neurons * inputs];
+            float[] sparseGrad = new float[neurons * inputs];
+            float[] denseBias = new float[neurons];
+            float[] sparseBias = new float[neurons];
+            first.accumulateGradients(batch, delta, BATCH, denseGrad, denseBias);
+            first.accumulateGradients(nonZeros, delta, BATCH, sparseGrad, sparseBias);
+            float gradientDiff = Math.max(maxRelativeDiff(denseGrad, sparseGrad), maxRelativeDiff(denseBias, sparseBias));
+
+            // A training step, on whichever path TrainingBuffers picks, against the dense products
+            TrainingBuffers buffers = new TrainingBuffers(layers, BATCH);
+            int[] indices = new int[BATCH];
+            for (int r = 0; r < BATCH; r++) {
+                indices[r] = r;
+            }
+            buffers.computeGradients(layers, samples, targets, indices, 0, BATCH);
+            float[] expectedOut = new float[BATCH * neurons];
+            first.forwardBatch(buffers.activations[0], expectedOut, BATCH, true);
+            float[] expectedGrad = new float[neurons * inputs];
+            float[] expectedBias = new float[neurons];
+            first.accumulateGradients(buffers.activations[0], buffers.deltas[0], BATCH, expectedGrad, expectedBias);
+            float stepDiff = Math.max(maxRelativeDiff(expectedOut, buffers.activations[1]),
+                                      Math.max(maxRelativeDiff(expectedGrad, buffers.gradWeights[0]),
+                                               maxRelativeDiff(expectedBias, buffers.gradBiases[0])));
+            boolean expectSparse = density < SparseInput.DENSITY_THRESHOLD - 0.02f;
+            boolean expectDense = density > SparseInput.DENSITY_THRESHOLD + 0.02f;
+            boolean pathOk = !(expectSparse && !buffers.inputSparse) && !(expectDense && buffers.inputSparse);
+
+            boolean rowOk = forwardDiff <= TOLERANCE && gradientDiff <= TOLERANCE && stepDiff <= TOLERANCE && pathOk;
+            ok &= rowOk;
+            System.out.printf("%6.0f%%  %12.2e  %13.2e  %9.2e  %s%s%n", density * 100, forwardDiff, gradientDiff,
+                              stepDiff, buffers.inputSparse ? "sparse" : "dense", rowOk ? "" : "  MISMATCH");
+        }
+        System.out.println(ok ? "Sparse and dense paths agree within " + TOLERANCE
+                              : "Sparse and dense paths DIFFER");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    // Largest |expected - actual| relative to max(1, |expected|, |actual|).
+    static float maxRelativeDiff(float[] expected, float[] actual) {
+        float worst = 0;
+        for (int i = 0; i < expected.length; i++) {
+            float scale = Math.max(1f, Math.max(Math.abs(expected[i]), Math.abs(actual[i])));
+            worst = Math.max(worst, Math.abs(expected[i] - actual[i]) / scale);
+        }
+        return worst;
+    }
+}
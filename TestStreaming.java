@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Streaming training check: trains through Brain.trainStreaming from an
+ * in-memory SampleSource on a learnable synthetic task and compares it
+ * with in-memory training from the same starting weights, checks that
+ * every record is trained on once per epoch, and that a source failing
+ * halfway through an epoch stops training with its error.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TestStreaming {
+    static final float MAX_LOSS_RATIO = 1.15f; // Streaming may end at most this much above in-memory
+
+    // Serves fixed uint8 records; failure, if set, is thrown when record failAt is read.
+    static final class ArraySource implements SampleSource {
+        private final byte[][] images;
+        private final int[] labels;
+        private final int failAt;
+        private final Exception failure;
+        private int cursor;
+
+        ArraySource(byte[][] images, int[] labels, int failAt, Exception failure) {
+            this.images = images;
+            this.labels = labels;
+            this.failAt = failAt;
+            this.failure = failure;
+        }
+
+        @Override
+        public int pixelCount() {
+            return images[0].length;
+        }
+
+        @Override
+        public void reset() {
+            cursor = 0;
+        }
+
+        @Override
+        public int next(byte[] dst, int offset) throws IOException {
+            if (failure != null && cursor == failAt) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+            if (cursor >= images.length) {
+                return -1;
+            }
+            System.arraycopy(images[cursor], 0, dst, offset, images[cursor].length);
+            return labels[cursor++];
+        }
+    }
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        int[] architecture = {784, 64, 10};
+        int numSamples = 3000; // Not a multiple of the chunk or the batch
+        int epochs = 3;
+        int batchSize = 32;
+        int chunkSize = 1000;
+        float learningRate = 0.1f;
+
+        // MNIST-shaped sparse images; the label is the best of 10 fixed random
+        // projections, so there is something to learn.
+        Random random = new Random(42);
+        int classes = architecture[architecture.length - 1];
+        float[][] projections = new float[classes][architecture[0]];
+        for (float[] p : projections) {
+            for (int j = 0; j < p.length; j++) {
+                p[j] = (float) random.nextGaussian();
+            }
+        }
+        byte[][] images = new byte[numSamples][architecture[0]];
+        float[][] inputs = new float[numSamples][architecture[0]];
+        float[][] targets = new float[numSamples][classes];
+        int[] labels = new int[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            for (int j = 0; j < architecture[0]; j++) {
+                if (random.nextFloat() < 0.2f) {
+                    images[i][j] = (byte) (1 + random.nextInt(255));
+                    inputs[i][j] = (images[i][j] & 0xff) / 255.0f;
+                }
+            }
+            labels[i] = argmax(projections, inputs[i]);
+            targets[i][labels[i]] = 1.0f;
+        }
+
+        // Same starting weights for both runs
+        Brain inMemory = new Brain(architecture);
+        Brain streamed = inMemory.snapshot();
+        Evaluation before = Evaluation.evaluate(inMemory, inputs, labels, null);
+        inMemory.train(inputs, targets, learningRate, epochs, batchSize, 1);
+        int[] samplesPerEpoch = new int[epochs];
+        streamed.addTrainingListener(new TrainingListener() {
+            @Override
+            public void epochFinished(TrainingStats stats) {
+                samplesPerEpoch[stats.epoch() - 1] = stats.samples();
+            }
+        });
+        streamed.trainStreaming(new ArraySource(images, labels, -1, null), learningRate, epochs, batchSize, chunkSize);
+        Evaluation memory = Evaluation.evaluate(inMemory, inputs, labels, null);
+        Evaluation stream = Evaluation.evaluate(streamed, inputs, labels, null);
+        System.out.printf("%-10s log loss %.4f  accuracy %6.2f%%%n", "Untrained:", before.logLoss(),
+                          before.accuracy() * 100);
+        System.out.printf("%-10s log loss %.4f  accuracy %6.2f%%%n", "In memory:", memory.logLoss(),
+                          memory.accuracy() * 100);
+        System.out.printf("%-10s log loss %.4f  accuracy %6.2f%%%n", "Streamed:", stream.logLoss(),
+                          stream.accuracy() * 100);
+        check("streaming converges comparably to in-memory training",
+              stream.logLoss() < before.logLoss() && stream.logLoss() <= memory.logLoss() * MAX_LOSS_RATIO);
+        boolean allSeen = true;
+        for (int n : samplesPerEpoch) {
+            allSeen &= n == numSamples;
+        }
+        check("every record trained on once per epoch", allSeen);
+
+        // A read error halfway through an epoch comes back as the same IOException
+        IOException readError = new IOException("disk gone");
+        try {
+            new Brain(architecture).trainStreaming(new ArraySource(images, labels, numSamples / 2, readError),
+                                                   learningRate, 1, batchSize, chunkSize);
+            check("a read error stops training", false);
+        } catch (IOException e) {
+            check("a read error stops training", e == readError);
+        }
+
+        // A bug in the source comes back wrapped, with the original as the cause
+        RuntimeException bug = new IllegalArgumentException("bad record");
+        try {
+            new Brain(architecture).trainStreaming(new ArraySource(images, labels, numSamples / 2, bug),
+                                                   learningRate, 1, batchSize, chunkSize);
+            check("a source exception stops training", false);
+        } catch (IllegalStateException e) {
+            check("a source exception stops training", e.getCause() == bug);
+        }
+
+        System.out.println(failures == 0 ? "All streaming checks passed" : failures + " streaming check(s) FAILED");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String what, boolean passed) {
+        System.out.println((passed ? "ok    " : "FAIL  ") + what);
+        if (!passed) {
+            failures++;
+        }
+    }
+
+    // Index of the projection that scores input highest.
+    private static int argmax(float[][] projections, float[] input) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < projections.length; c++) {
+            float score = Kernels.dot(input, 0, projections[c], 0, input.length);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
@@ -1,106 +1,153 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.util.Arrays;
-import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
+import javax.management.JMException;
 
 public class TestTwo {
     public static final int IMAGE_WIDTH = 28;
     public static final int IMAGE_HEIGHT = 28;
     public static final int INPUT_SIZE = IMAGE_WIDTH * IMAGE_HEIGHT;
     public static final int NUM_CLASSES = 10;
+    static final int STREAM_CHUNK = 4096; // Images per read in --stream mode
 
+    // Usage: java TestTwo [--augment | --stream]
     public static void main(String[] args) {
-        // Load training data from the "train" folder (expects subfolders 0-9)
-        String trainPath = "train";
-        ArrayList<TrainingExample> trainingExamples = new ArrayList<>();
+        boolean augment = args.length > 0 && args[0].equals("--augment");
+        boolean stream = args.length > 0 && args[0].equals("--stream");
         
-        for (int label = 0; label < NUM_CLASSES; label++) {
-            File labelFolder = new File(trainPath + File.separator + label);
-            if (!labelFolder.exists() || !labelFolder.isDirectory()) {
-                System.err.println("Folder not found: " + labelFolder.getAbsolutePath());
-                continue;
-            }
-            File[] imageFiles = labelFolder.listFiles();
-            if (imageFiles == null) continue;
-            for (File imgFile : imageFiles) {
-                try {
-                    BufferedImage img = ImageIO.read(imgFile);
-                    if (img == null) continue;
-                    float[] inputVector = imageToFloatArray(img);
-                    trainingExamples.add(new TrainingExample(inputVector, label));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        // Load training data from the IDX files if present, otherwise from the
+        // "train" folder (expects subfolders 0-9)
+        IdxDataset dataset;
+        try {
+            dataset = Evaluation.trainingSet();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (dataset.pixelCount() != INPUT_SIZE) {
+            System.err.println("Expected " + INPUT_SIZE + " pixels per image, got " + dataset.pixelCount());
+            return;
         }
         
-        System.out.println("Loaded " + trainingExamples.size() + " training examples.");
+        int numSamples = dataset.size();
+        System.out.println("Loaded " + numSamples + " training examples.");
         
-        // Convert training examples to arrays
-        int numSamples = trainingExamples.size();
-        float[][] trainingInputs = new float[numSamples][INPUT_SIZE];
-        float[][] trainingTargets = new float[numSamples][NUM_CLASSES];
-        for (int i = 0; i < numSamples; i++) {
-            TrainingExample ex = trainingExamples.get(i);
-            trainingInputs[i] = ex.input;
-            trainingTargets[i] = new float[NUM_CLASSES];
-            trainingTargets[i][ex.label] = 1.0f; // one-hot encoding
+        // Convert training examples to arrays; streamed runs read the mapped bytes instead
+        float[][] trainingInputs = null;
+        float[][] trainingTargets = null;
+        if (!stream) {
+            trainingInputs = dataset.inputs();
+            trainingTargets = dataset.oneHotTargets(NUM_CLASSES); // one-hot encoding
         }
         
         // Create a neural network with architecture: {784, 128, 64, 10}
         int[] architecture = {INPUT_SIZE, 128, 64, NUM_CLASSES};
         Brain brain = new Brain(architecture);
         
-        // Train network (adjust learning rate and epochs as needed)
-        float learningRate = 0.01f;
+        // Train network (adjust learning rate, epochs and batch size as needed)
+        // Gradients are averaged over a batch, so the learning rate scales up with it.
+        float learningRate = 0.1f;
         int epochs = 10;  // Increase as needed
+        int batchSize = 32;
         
-        System.out.println("Starting training...");
-        brain.train(trainingInputs, trainingTargets, learningRate, epochs);
-        System.out.println("Training finished.");
+        // Progress is visible over JMX while training and logged to training_log.csv.
+        // A checkpoint is written after every epoch; rerunning after a crash resumes from it.
+        // Augmented and streamed runs aren't checkpointed: their batches come from producer threads.
+        TrainingMonitor monitor = new TrainingMonitor();
+        File checkpointFile = new File("trained_brain.ckpt");
+        try (CsvTrainingLog log = new CsvTrainingLog(new File("training_log.csv"), false);
+             Checkpointer checkpoints = augment || stream ? null : new Checkpointer(checkpointFile, 1)) {
+            monitor.register("TestTwo");
+            try {
+                brain.addTrainingListener(monitor);
+                brain.addTrainingListener(log);
+                // One line per epoch with loss, accuracy and timings, instead of Brain's loss-only line
+                brain.setPrintEpochLoss(false);
+                brain.addTrainingListener(new TrainingListener() {
+                    @Override
+                    public void epochFinished(TrainingStats stats) {
+                        System.out.println(stats);
+                    }
+                });
+                System.out.println("Starting training...");
+                if (augment) {
+                    // Two randomly distorted copies of every digit per epoch, built on two threads
+                    brain.trainAugmented(trainingInputs, trainingTargets, Augmenter.mnist(), learningRate, epochs,
+                                         batchSize, 2, 2);
+                } else if (stream) {
+                    // One chunk of STREAM_CHUNK images in memory at a time, shuffled within the chunk
+                    brain.trainStreaming(dataset.source(), learningRate, epochs, batchSize, STREAM_CHUNK);
+                } else {
+                    brain.train(trainingInputs, trainingTargets, learningRate, epochs, batchSize, 1, checkpoints);
+                }
+                System.out.println("Training finished.");
+            } finally {
+                monitor.unregister();
+            }
+        } catch (IOException | JMException e) {
+            e.printStackTrace();
+            return;
+        }
         
-        // Serialize the trained network to "trained_brain.ser"
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("trained_brain.ser"))) {
-            oos.writeObject(brain);
-            System.out.println("Trained network serialized to trained_brain.ser");
+        // Save the trained network to "trained_brain.bin"; the run is complete, so drop its checkpoint
+        try {
+            ModelFile.save(brain, new File(ModelFile.DEFAULT_FILE));
+            System.out.println("Trained network saved to " + ModelFile.DEFAULT_FILE);
+            if (!augment && !stream) {
+                checkpointFile.delete();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
         
         // Optionally, test on the training set and print accuracy
         int correct = 0;
-        for (int i = 0; i < numSamples; i++) {
-            float[] output = brain.pass(trainingInputs[i]);  // inference uses softmax
-            int predicted = argmax(output);
-            if (predicted == trainingExamples.get(i).label) {
-                correct++;
+        if (trainingInputs != null) {
+            float[][] outputs = brain.passBatch(trainingInputs);  // inference uses softmax
+            for (int i = 0; i < numSamples; i++) {
+                int predicted = argmax(outputs[i]);
+                if (predicted == dataset.label(i)) {
+                    correct++;
+                }
+            }
+        } else {
+            float[] input = new float[INPUT_SIZE];
+            InferenceContext context = brain.newContext();
+            for (int i = 0; i < numSamples; i++) {
+                dataset.toFloats(i, input);
+                if (argmax(brain.forward(input, context)) == dataset.label(i)) {
+                    correct++;
+                }
             }
         }
         System.out.println("Training Accuracy: " + ((float)correct / numSamples * 100) + "%");
     }
     
-    // Convert a BufferedImage (assumed 28x28 grayscale) to a normalized float array
-    public static float[] imageToFloatArray(BufferedImage img) {
-        float[] result = new float[INPUT_SIZE];
-        int index = 0;
-        for (int y = 0; y < IMAGE_HEIGHT; y++) {
-            for (int x = 0; x < IMAGE_WIDTH; x++) {
-                int rgb = img.getRGB(x, y);
-                int r = (rgb >> 16) & 0xff;
-                int g = (rgb >> 8) & 0xff;
-                int b = rgb & 0xff;
-                // Average the channels to get a grayscale value
-                int gray = (r + g + b) / 3;
-                result[index++] = gray / 255.0f;
-            }
+    // Loads every image under path/0 .. path/9, labelled by folder.
+    // PNGs are decoded once into path.cache and read from there on later runs.
+    public static ArrayList<TrainingExample> loadFolder(String path) throws IOException {
+        IdxDataset dataset = DatasetCache.open(new File(path), new File(path + ".cache"),
+                                               IMAGE_HEIGHT, IMAGE_WIDTH, NUM_CLASSES);
+        return toExamples(dataset);
+    }
+    
+    // Loads a memory-mapped IDX image/label pair.
+    public static ArrayList<TrainingExample> loadIdx(File images, File labels) throws IOException {
+        IdxDataset dataset = IdxDataset.open(images.toPath(), labels.toPath());
+        if (dataset.pixelCount() != INPUT_SIZE) {
+            throw new IOException("Expected " + INPUT_SIZE + " pixels per image, got " + dataset.pixelCount());
         }
-        return result;
+        return toExamples(dataset);
+    }
+    
+    static ArrayList<TrainingExample> toExamples(IdxDataset dataset) {
+        ArrayList<TrainingExample> examples = new ArrayList<>(dataset.size());
+        for (int i = 0; i < dataset.size(); i++) {
+            examples.add(new TrainingExample(dataset.toFloats(i), dataset.label(i)));
+        }
+        return examples;
     }
-
     
     // Helper method: returns index of maximum value
     public static int argmax(float[] arr) {
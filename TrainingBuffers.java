@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+/**
+ * Preallocated working memory for mini-batch training.
+ *
+ * Activations, deltas and gradients for a whole batch are kept as flat
+ * row-major matrices (one row per sample) and reused for every batch, so
+ * a training run allocates nothing per sample.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+class TrainingBuffers {
+    final int capacity;          // Maximum rows per batch
+    final float[][] activations; // activations[0] is the input batch, activations[l + 1] the output of layer l
+    final float[][] deltas;      // deltas[l] is dLoss/dz for layer l
+    final float[][] gradWeights; // Summed over the batch
+    final float[][] gradBiases;
+    float[] targets;             // One-hot targets of the batch, rows x classes
+    final SparseInput sparseInput; // Nonzeros of activations[0] when the first layer ran sparse
+    boolean inputSparse;
+
+    // Running totals for telemetry, cleared by resetStats
+    int correct;                 // Samples whose largest logit was the target class
+    long dataNanos;              // Gathering inputs into the batch matrix
+    long forwardNanos;           // Forward pass and loss
+    long backwardNanos;          // Deltas and weight gradients
+    long updateNanos;            // Per-sample weight updates (Hogwild only)
+
+    TrainingBuffers(Layer[] layers, int capacity) {
+        this.capacity = capacity;
+        int L = layers.length;
+        activations = new float[L + 1][];
+        deltas = new float[L][];
+        gradWeights = new float[L][];
+        gradBiases = new float[L][];
+        activations[0] = new float[capacity * layers[0].inputCount()];
+        for (int l = 0; l < L; l++) {
+            int n = layers[l].neuronCount();
+            activations[l + 1] = new float[capacity * n];
+            deltas[l] = new float[capacity * n];
+            gradWeights[l] = new float[n * layers[l].inputCount()];
+            gradBiases[l] = new float[n];
+        }
+        targets = new float[capacity * layers[L - 1].neuronCount()];
+        sparseInput = new SparseInput(capacity, layers[0].inputCount());
+    }
+
+    // Runs forward and backward for samples indices[start .. start + rows)
+    // and leaves their summed gradients in gradWeights/gradBiases.
+    // Returns the summed cross-entropy loss of the batch.
+    double computeGradients(Layer[] layers, float[][] inputs, float[][] targets, int[] indices, int start, int rows) {
+        long begin = System.nanoTime();
+        gather(inputs, targets, indices, start, rows);
+        dataNanos += System.nanoTime() - begin;
+        return computeGradients(layers, rows);
+    }
+
+    // Same, for a batch that is already in activations[0] and targets.
+    double computeGradients(Layer[] layers, int rows) {
+        double loss = computeDeltas(layers, rows);
+        long begin = System.nanoTime();
+        for (int l = 0; l < layers.length; l++) {
+            Arrays.fill(gradWeights[l], 0f);
+            Arrays.fill(gradBiases[l], 0f);
+            if (l == 0 && inputSparse) {
+                layers[0].accumulateGradients(sparseInput, deltas[0], rows, gradWeights[0], gradBiases[0]);
+            } else {
+                layers[l].accumulateGradients(activations[l], deltas[l], rows, gradWeights[l], gradBiases[l]);
+            }
+        }
+        backwardNanos += System.nanoTime() - begin;
+        return loss;
+    }
+
+    // Forward and backward only: fills activations and deltas for the batch
+    // without forming weight gradients. Returns the summed loss.
+    double computeDeltas(Layer[] layers, float[][] inputs, float[][] targets, int[] indices, int start, int rows) {
+        long begin = System.nanoTime();
+        gather(inputs, targets, indices, start, rows);
+        dataNanos += System.nanoTime() - begin;
+        return computeDeltas(layers, rows);
+    }
+
+    // Copies samples indices[start .. start + rows) into one contiguous matrix.
+    void gather(float[][] inputs, float[][] targets, int[] indices, int start, int rows) {
+        int inputSize = activations[0].length / capacity;
+        int classes = this.targets.length / capacity;
+        for (int r = 0; r < rows; r++) {
+            int sample = indices[start + r];
+            System.arraycopy(inputs[sample], 0, activations[0], r * inputSize, inputSize);
+            System.arraycopy(targets[sample], 0, this.targets, r * classes, classes);
+        }
+    }
+
+    // Exchanges the input and target matrices with a prefetched batch (no copying).
+    void swapBatch(BatchPrefetcher.Batch batch) {
+        float[] inputs = activations[0];
+        activations[0] = batch.inputs;
+        batch.inputs = inputs;
+        float[] batchTargets = targets;
+        targets = batch.targets;
+        batch.targets = batchTargets;
+    }
+
+    // Forward and backward for the batch in activations[0] and targets.
+    double computeDeltas(Layer[] layers, int rows) {
+        int L = layers.length;
+
+        long begin = System.nanoTime();
+
+        // --- Forward Pass ---
+        // The first layer skips zero inputs when the batch is sparse enough.
+        inputSparse = layers[0].forwardBatchSparse(activations[0], sparseInput, activations[1], rows, L > 1);
+        for (int l = 1; l < L; l++) {
+            layers[l].forwardBatch(activations[l], activations[l + 1], rows, l < L - 1);
+        }
+
+        // --- Loss and output delta (softmax - target for cross-entropy) ---
+        // The loss uses log p = logit - logSumExp directly, so it stays finite
+        // even when a probability underflows to zero.
+        double loss = 0.0;
+        int classes = layers[L - 1].neuronCount();
+        float[] logits = activations[L];
+        float[] outputDelta = deltas[L - 1];
+        for (int r = 0; r < rows; r++) {
+            int row = r * classes;
+            float logSumExp = Kernels.softmax(logits, row, outputDelta, row, classes);
+            int predicted = 0;
+            int expected = 0;
+            for (int i = 0; i < classes; i++) {
+                loss -= targets[row + i] * (logits[row + i] - logSumExp);
+                outputDelta[row + i] -= targets[row + i];
+                if (logits[row + i] > logits[row + predicted]) {
+                    predicted = i;
+                }
+                if (targets[row + i] > targets[row + expected]) {
+                    expected = i;
+                }
+            }
+            if (predicted == expected) {
+                correct++;
+            }
+        }
+        long forwardEnd = System.nanoTime();
+        forwardNanos += forwardEnd - begin;
+
+        // --- Backward Pass ---
+        for (int l = L - 1; l > 0; l--) {
+            float[] errors = deltas[l - 1];
+            layers[l].backpropagateBatch(deltas[l], errors, rows);
+            // ReLU derivative: the output is positive exactly when the weighted sum was.
+            float[] outputs = activations[l];
+            for (int i = 0; i < rows * layers[l - 1].neuronCount(); i++) {
+                if (outputs[i] <= 0) {
+                    errors[i] = 0;
+                }
+            }
+        }
+        backwardNanos += System.nanoTime() - forwardEnd;
+        return loss;
+    }
+
+    // Applies the averaged gradients of a batch of the given size.
+    void applyGradients(Layer[] layers, int rows, float learningRate, float clipThreshold) {
+        float scale = learningRate / rows;
+        for (int l = 0; l < layers.length; l++) {
+            layers[l].applyGradients(gradWeights[l], gradBiases[l], scale, clipThreshold);
+        }
+    }
+
+    void resetStats() {
+        correct = 0;
+        dataNanos = 0;
+        forwardNanos = 0;
+        backwardNanos = 0;
+        updateNanos = 0;
+    }
+
+    // Adds another worker's gradients into this one's (one step of the reduction tree).
+    void addGradients(TrainingBuffers other) {
+        for (int l = 0; l < gradWeights.length; l++) {
+            Kernels.axpy(1f, other.gradWeights[l], 0, gradWeights[l], 0, gradWeights[l].length);
+            Kernels.axpy(1f, other.gradBiases[l], 0, gradBiases[l], 0, gradBiases[l].length);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Receives progress events while a Brain trains.
+ *
+ * Register one with Brain.addTrainingListener. Events are delivered on the
+ * training thread, so a listener should return quickly. Hogwild training
+ * has no batches and only reports epochs.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public interface TrainingListener {
+    // Called after each mini-batch has updated the weights.
+    default void batchFinished(TrainingStats stats) {
+    }
+
+    // Called at the end of each epoch with totals for the whole epoch.
+    default void epochFinished(TrainingStats stats) {
+    }
+}
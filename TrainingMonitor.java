@@ -0,0 +1,164 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Training listener that publishes progress as a JMX MBean, so a headless
+ * job can be watched with jconsole or any JMX client.
+ *
+ * Phase times and GC figures are totals since the monitor was created;
+ * loss, accuracy and throughput are for the last batch and last epoch.
+ *
+ *   TrainingMonitor monitor = new TrainingMonitor();
+ *   monitor.register("mnist");
+ *   brain.addTrainingListener(monitor);
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public class TrainingMonitor implements TrainingListener, TrainingMonitorMBean {
+    private volatile int epoch;
+    private volatile long batches;
+    private volatile long samples;
+    private volatile double lastBatchLoss;
+    private volatile double lastBatchAccuracy;
+    private volatile double samplesPerSecond;
+    private volatile double lastEpochLoss;
+    private volatile double lastEpochAccuracy;
+    private volatile double lastEpochSamplesPerSecond;
+    private volatile long dataNanos;
+    private volatile long forwardNanos;
+    private volatile long backwardNanos;
+    private volatile long updateNanos;
+    private volatile long gcCount;
+    private volatile long gcMillis;
+    private volatile long lastEvent = System.nanoTime();
+
+    // Phase times already counted from this epoch's batch events.
+    private long epochData;
+    private long epochForward;
+    private long epochBackward;
+    private long epochUpdate;
+
+    private ObjectName objectName;
+
+    // Registers this monitor with the platform MBean server as "mnist:type=Training,name=<name>".
+    public synchronized ObjectName register(String name) throws JMException {
+        objectName = ObjectName.getInstance("mnist:type=Training,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public synchronized void batchFinished(TrainingStats stats) {
+        epoch = stats.epoch();
+        batches++;
+        samples += stats.samples();
+        lastBatchLoss = stats.loss();
+        lastBatchAccuracy = stats.accuracy();
+        samplesPerSecond = stats.samplesPerSecond();
+        dataNanos += stats.dataNanos();
+        forwardNanos += stats.forwardNanos();
+        backwardNanos += stats.backwardNanos();
+        updateNanos += stats.updateNanos();
+        epochData += stats.dataNanos();
+        epochForward += stats.forwardNanos();
+        epochBackward += stats.backwardNanos();
+        epochUpdate += stats.updateNanos();
+        lastEvent = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void epochFinished(TrainingStats stats) {
+        epoch = stats.epoch();
+        if (stats.batch() == 0) {
+            // No batch events (Hogwild): count the epoch's samples here.
+            samples += stats.samples();
+        }
+        lastEpochLoss = stats.loss();
+        lastEpochAccuracy = stats.accuracy();
+        lastEpochSamplesPerSecond = stats.samplesPerSecond();
+        dataNanos += stats.dataNanos() - epochData;
+        forwardNanos += stats.forwardNanos() - epochForward;
+        backwardNanos += stats.backwardNanos() - epochBackward;
+        updateNanos += stats.updateNanos() - epochUpdate;
+        epochData = 0;
+        epochForward = 0;
+        epochBackward = 0;
+        epochUpdate = 0;
+        gcCount += stats.gcCount();
+        gcMillis += stats.gcMillis();
+        lastEvent = System.nanoTime();
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public long getBatchesCompleted() {
+        return batches;
+    }
+
+    public long getSamplesCompleted() {
+        return samples;
+    }
+
+    public double getLastBatchLoss() {
+        return lastBatchLoss;
+    }
+
+    public double getLastBatchAccuracy() {
+        return lastBatchAccuracy;
+    }
+
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    public double getLastEpochLoss() {
+        return lastEpochLoss;
+    }
+
+    public double getLastEpochAccuracy() {
+        return lastEpochAccuracy;
+    }
+
+    public double getLastEpochSamplesPerSecond() {
+        return lastEpochSamplesPerSecond;
+    }
+
+    public long getDataMillis() {
+        return dataNanos / 1_000_000;
+    }
+
+    public long getForwardMillis() {
+        return forwardNanos / 1_000_000;
+    }
+
+    public long getBackwardMillis() {
+        return backwardNanos / 1_000_000;
+    }
+
+    public long getUpdateMillis() {
+        return updateNanos / 1_000_000;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    public long getMillisSinceLastEvent() {
+        return (System.nanoTime() - lastEvent) / 1_000_000;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * JMX view of a running training job (see TrainingMonitor).
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public interface TrainingMonitorMBean {
+    int getEpoch();
+
+    long getBatchesCompleted();
+
+    long getSamplesCompleted();
+
+    double getLastBatchLoss();
+
+    double getLastBatchAccuracy();
+
+    double getSamplesPerSecond();
+
+    double getLastEpochLoss();
+
+    double getLastEpochAccuracy();
+
+    double getLastEpochSamplesPerSecond();
+
+    long getDataMillis();
+
+    long getForwardMillis();
+
+    long getBackwardMillis();
+
+    long getUpdateMillis();
+
+    long getGcCount();
+
+    long getGcMillis();
+
+    // Time since the last batch or epoch finished; grows during a stall.
+    long getMillisSinceLastEvent();
+}
@@ -0,0 +1,136 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Collects the per-phase times and counts of one training run and turns
+ * them into TrainingStats events for the registered listeners.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+class TrainingProgress {
+    private final List<TrainingListener> listeners;
+
+    private int epoch;
+    private int batches;
+    private int samples;
+    private double loss;
+    private int correct;
+    private long epochStart;
+    private long dataNanos;
+    private long forwardNanos;
+    private long backwardNanos;
+    private long updateNanos;
+    private long gcCountStart;
+    private long gcMillisStart;
+
+    TrainingProgress(List<TrainingListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    void startEpoch(int epoch) {
+        this.epoch = epoch;
+        batches = 0;
+        samples = 0;
+        loss = 0;
+        correct = 0;
+        dataNanos = 0;
+        forwardNanos = 0;
+        backwardNanos = 0;
+        updateNanos = 0;
+        gcCountStart = 0;
+        gcMillisStart = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCountStart += Math.max(0, gc.getCollectionCount());
+            gcMillisStart += Math.max(0, gc.getCollectionTime());
+        }
+        epochStart = System.nanoTime();
+    }
+
+    // Records one batch computed by workers[0 .. shards). waitNanos is time spent
+    // waiting for the batch outside the workers, computeNanos the wall time of
+    // computing its gradients and updateNanos the wall time of applying them.
+    void batch(TrainingBuffers[] workers, int shards, int rows, double batchLoss,
+               long waitNanos, long computeNanos, long batchUpdateNanos) {
+        int batchCorrect = 0;
+        long data = 0;
+        long forward = 0;
+        long backward = 0;
+        for (int w = 0; w < shards; w++) {
+            batchCorrect += workers[w].correct;
+            data += workers[w].dataNanos;
+            forward += workers[w].forwardNanos;
+            backward += workers[w].backwardNanos;
+            workers[w].resetStats();
+        }
+        // Scale the workers' combined phase times down to the wall time they took.
+        long busy = data + forward + backward;
+        if (busy > 0) {
+            data = (long) ((double) data * computeNanos / busy);
+            forward = (long) ((double) forward * computeNanos / busy);
+            backward = computeNanos - data - forward;
+        }
+        data += waitNanos;
+
+        batches++;
+        samples += rows;
+        loss += batchLoss;
+        correct += batchCorrect;
+        dataNanos += data;
+        forwardNanos += forward;
+        backwardNanos += backward;
+        updateNanos += batchUpdateNanos;
+        if (!listeners.isEmpty()) {
+            TrainingStats stats = new TrainingStats(false, epoch, batches, rows, batchLoss, batchCorrect,
+                                                    data + forward + backward + batchUpdateNanos,
+                                                    data, forward, backward, batchUpdateNanos, 0, 0);
+            for (TrainingListener listener : listeners) {
+                listener.batchFinished(stats);
+            }
+        }
+    }
+
+    // Records a whole epoch of per-sample work spread over workers[0 .. count),
+    // as in Hogwild training, where there are no batches to report.
+    void samples(TrainingBuffers[] workers, int count, int rows, double epochLoss) {
+        long wall = System.nanoTime() - epochStart;
+        long busy = 0;
+        for (int w = 0; w < count; w++) {
+            TrainingBuffers b = workers[w];
+            correct += b.correct;
+            dataNanos += b.dataNanos;
+            forwardNanos += b.forwardNanos;
+            backwardNanos += b.backwardNanos;
+            updateNanos += b.updateNanos;
+            busy += b.dataNanos + b.forwardNanos + b.backwardNanos + b.updateNanos;
+            b.resetStats();
+        }
+        if (busy > 0) {
+            dataNanos = (long) ((double) dataNanos * wall / busy);
+            forwardNanos = (long) ((double) forwardNanos * wall / busy);
+            backwardNanos = (long) ((double) backwardNanos * wall / busy);
+            updateNanos = wall - dataNanos - forwardNanos - backwardNanos;
+        }
+        samples += rows;
+        loss += epochLoss;
+    }
+
+    // Ends the epoch and notifies listeners with its totals.
+    TrainingStats endEpoch() {
+        long elapsed = System.nanoTime() - epochStart;
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        TrainingStats stats = new TrainingStats(true, epoch, batches, samples, loss, correct, elapsed,
+                                                dataNanos, forwardNanos, backwardNanos, updateNanos,
+                                                gcCount - gcCountStart, gcMillis - gcMillisStart);
+        for (TrainingListener listener : listeners) {
+            listener.epochFinished(stats);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * One training event: a finished batch or a finished epoch.
+ *
+ * Time is split into data (gathering or waiting for inputs), forward
+ * (forward pass and loss), backward (deltas and gradients) and update
+ * (applying them). With several threads the split is each phase's share of
+ * the threads' combined time, applied to the wall-clock time, so the four
+ * phases always add up to about elapsedNanos.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+public final class TrainingStats {
+    private final boolean epochEnd;
+    private final int epoch;
+    private final int batch;
+    private final int samples;
+    private final double loss;
+    private final int correct;
+    private final long elapsedNanos;
+    private final long dataNanos;
+    private final long forwardNanos;
+    private final long backwardNanos;
+    private final long updateNanos;
+    private final long gcCount;
+    private final long gcMillis;
+
+    TrainingStats(boolean epochEnd, int epoch, int batch, int samples, double loss, int correct, long elapsedNanos,
+                  long dataNanos, long forwardNanos, long backwardNanos, long updateNanos, long gcCount, long gcMillis) {
+        this.epochEnd = epochEnd;
+        this.epoch = epoch;
+        this.batch = batch;
+        this.samples = samples;
+        this.loss = loss;
+        this.correct = correct;
+        this.elapsedNanos = elapsedNanos;
+        this.dataNanos = dataNanos;
+        this.forwardNanos = forwardNanos;
+        this.backwardNanos = backwardNanos;
+        this.updateNanos = updateNanos;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    // True for an epoch summary, false for a single batch.
+    public boolean isEpochEnd() {
+        return epochEnd;
+    }
+
+    // Epoch number, starting at 1.
+    public int epoch() {
+        return epoch;
+    }
+
+    // Batch number within the epoch, starting at 1; for an epoch summary, the number of batches.
+    public int batch() {
+        return batch;
+    }
+
+    public int samples() {
+        return samples;
+    }
+
+    // Average cross-entropy loss per sample.
+    public double loss() {
+        return samples > 0 ? loss / samples : 0;
+    }
+
+    // Fraction of samples whose largest output was the target class.
+    public double accuracy() {
+        return samples > 0 ? (double) correct / samples : 0;
+    }
+
+    public double samplesPerSecond() {
+        return elapsedNanos > 0 ? samples * 1e9 / elapsedNanos : 0;
+    }
+
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long dataNanos() {
+        return dataNanos;
+    }
+
+    public long forwardNanos() {
+        return forwardNanos;
+    }
+
+    public long backwardNanos() {
+        return backwardNanos;
+    }
+
+    public long updateNanos() {
+        return updateNanos;
+    }
+
+    // Garbage collections during the epoch (always 0 for a batch).
+    public long gcCount() {
+        return gcCount;
+    }
+
+    // Time spent in those collections.
+    public long gcMillis() {
+        return gcMillis;
+    }
+
+    @Override
+    public String toString() {
+        String what = epochEnd ? "Epoch " + epoch + " (" + batch + " batches)" : "Epoch " + epoch + " batch " + batch;
+        return String.format("%s: loss %.4f, accuracy %.2f%%, %.0f samples/s, "
+                             + "data %.1f ms, forward %.1f ms, backward %.1f ms, update %.1f ms, gc %d (%d ms)",
+                             what, loss(), accuracy() * 100, samplesPerSecond(), dataNanos / 1e6,
+                             forwardNanos / 1e6, backwardNanos / 1e6, updateNanos / 1e6, gcCount, gcMillis);
+    }
+}
@@ -0,0 +1,131 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels on the incubating Java Vector API (jdk.incubator.vector).
+ *
+ * Lives apart from the other sources because it only compiles and runs
+ * with the incubator module added. Kernels loads it by name at startup
+ * and keeps its scalar loops when the module or this class is missing:
+ *
+ *   javac -d out *.java
+ *   javac --add-modules jdk.incubator.vector -cp out -d out vector/VectorKernels.java
+ *   java --add-modules jdk.incubator.vector -cp out TestKernels
+ *
+ * Reductions keep four vector accumulators so consecutive fused
+ * multiply-adds don't wait on each other, the way Kernels.dot keeps four
+ * scalar partial sums.
+ *
+ * @author Bashar Zain
+ * @version 1.0
+ */
+final class VectorKernels implements KernelBackend {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public String name() {
+        return "Vector API, " + SPECIES.vectorBitSize() + "-bit";
+    }
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int n) {
+        FloatVector s0 = FloatVector.zero(SPECIES);
+        FloatVector s1 = FloatVector.zero(SPECIES);
+        FloatVector s2 = FloatVector.zero(SPECIES);
+        FloatVector s3 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i + 4 * LANES <= n; i += 4 * LANES) {
+            s0 = FloatVector.fromArray(SPECIES, a, aOff + i).fma(FloatVector.fromArray(SPECIES, b, bOff + i), s0);
+            s1 = FloatVector.fromArray(SPECIES, a, aOff + i + LANES)
+                            .fma(FloatVector.fromArray(SPECIES, b, bOff + i + LANES), s1);
+            s2 = FloatVector.fromArray(SPECIES, a, aOff + i + 2 * LANES)
+                            .fma(FloatVector.fromArray(SPECIES, b, bOff + i + 2 * LANES), s2);
+            s3 = FloatVector.fromArray(SPECIES, a, aOff + i + 3 * LANES)
+                            .fma(FloatVector.fromArray(SPECIES, b, bOff + i + 3 * LANES), s3);
+        }
+        for (; i + LANES <= n; i += LANES) {
+            s0 = FloatVector.fromArray(SPECIES, a, aOff + i).fma(FloatVector.fromArray(SPECIES, b, bOff + i), s0);
+        }
+        float sum = s0.add(s1).add(s2.add(s3)).reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n) {
+        FloatVector va = FloatVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        for (; i + LANES <= n; i += LANES) {
+            FloatVector.fromArray(SPECIES, x, xOff + i).fma(va, FloatVector.fromArray(SPECIES, y, yOff + i))
+                       .intoArray(y, yOff + i);
+        }
+        for (; i < n; i++) {
+            y[yOff + i] += alpha * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void clippedUpdate(float[] w, float[] g, float scale, float limit, int n) {
+        int i = 0;
+        for (; i + LANES <= n; i += LANES) {
+            FloatVector step = FloatVector.fromArray(SPECIES, g, i).mul(scale).min(limit).max(-limit);
+            FloatVector.fromArray(SPECIES, w, i).sub(step).intoArray(w, i);
+        }
+        for (; i < n; i++) {
+            w[i] -= Math.max(-limit, Math.min(limit, scale * g[i]));
+        }
+    }
+
+    @Override
+    public void gemmNT(float[] a, float[] b, float[] bias, float[] c, int m, int n, int k) {
+        for (int j0 = 0; j0 < n; j0 += Kernels.BLOCK) {
+            int j1 = Math.min(j0 + Kernels.BLOCK, n);
+            int r = 0;
+            for (; r + 4 <= m; r += 4) {
+                int a0 = r * k, a1 = a0 + k, a2 = a1 + k, a3 = a2 + k;
+                for (int j = j0; j < j1; j++) {
+                    int bRow = j * k;
+                    // Each weight vector is loaded once and used for four samples.
+                    FloatVector v0 = FloatVector.zero(SPECIES);
+                    FloatVector v1 = FloatVector.zero(SPECIES);
+                    FloatVector v2 = FloatVector.zero(SPECIES);
+                    FloatVector v3 = FloatVector.zero(SPECIES);
+                    int p = 0;
+                    for (; p + LANES <= k; p += LANES) {
+                        FloatVector w = FloatVector.fromArray(SPECIES, b, bRow + p);
+                        v0 = FloatVector.fromArray(SPECIES, a, a0 + p).fma(w, v0);
+                        v1 = FloatVector.fromArray(SPECIES, a, a1 + p).fma(w, v1);
+                        v2 = FloatVector.fromArray(SPECIES, a, a2 + p).fma(w, v2);
+                        v3 = FloatVector.fromArray(SPECIES, a, a3 + p).fma(w, v3);
+                    }
+                    float s0 = v0.reduceLanes(VectorOperators.ADD);
+                    float s1 = v1.reduceLanes(VectorOperators.ADD);
+                    float s2 = v2.reduceLanes(VectorOperators.ADD);
+                    float s3 = v3.reduceLanes(VectorOperators.ADD);
+                    for (; p < k; p++) {
+                        float w = b[bRow + p];
+                        s0 += a[a0 + p] * w;
+                        s1 += a[a1 + p] * w;
+                        s2 += a[a2 + p] * w;
+                        s3 += a[a3 + p] * w;
+                    }
+                    c[r * n + j] = bias[j] + s0;
+                    c[(r + 1) * n + j] = bias[j] + s1;
+                    c[(r + 2) * n + j] = bias[j] + s2;
+                    c[(r + 3) * n + j] = bias[j] + s3;
+                }
+            }
+            for (; r < m; r++) {
+                int aRow = r * k;
+                int cRow = r * n;
+                for (int j = j0; j < j1; j++) {
+                    c[cRow + j] = bias[j] + dot(a, aRow, b, j * k, k);
+                }
+            }
+        }
+    }
+}